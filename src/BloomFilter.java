@@ -0,0 +1,119 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Changed-path Bloom filter for one commit, laid out like git's: 10 bits per
+ * path, 7 probes derived from two murmur3 hashes. A negative answer is
+ * certain; a positive one means the commit has to be diffed.
+ */
+public final class BloomFilter {
+    // Commits touching more paths than this get a filter that always says "maybe"
+    static final int MAX_CHANGED_PATHS = 512;
+
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int NUM_HASHES = 7;
+    private static final int SEED_1 = 0x293ae76f;
+    private static final int SEED_2 = 0x7e646e2c;
+
+    private final byte[] bits;
+    private final boolean tooLarge;
+
+    private BloomFilter(byte[] bits, boolean tooLarge) {
+        this.bits = bits;
+        this.tooLarge = tooLarge;
+    }
+
+    public static BloomFilter of(Collection<String> paths) {
+        if (paths.size() > MAX_CHANGED_PATHS) {
+            return new BloomFilter(new byte[0], true);
+        }
+        int bytes = Math.max(8, (paths.size() * BITS_PER_ENTRY + 7) / 8);
+        BloomFilter filter = new BloomFilter(new byte[bytes], false);
+        for (String path : paths) {
+            filter.add(path);
+        }
+        return filter;
+    }
+
+    static BloomFilter fromBytes(byte[] bits, boolean tooLarge) {
+        return new BloomFilter(bits, tooLarge);
+    }
+
+    byte[] getBits() {
+        return bits;
+    }
+
+    boolean isTooLarge() {
+        return tooLarge;
+    }
+
+    private void add(String path) {
+        long bitCount = bits.length * 8L;
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int hash1 = murmur3(SEED_1, key);
+        int hash2 = murmur3(SEED_2, key);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            long bit = Integer.toUnsignedLong(hash1 + i * hash2) % bitCount;
+            bits[(int) (bit / 8)] |= (byte) (1 << (bit % 8));
+        }
+    }
+
+    /**
+     * False only when the path was certainly not changed by this commit.
+     */
+    public boolean mightContain(String path) {
+        if (tooLarge) {
+            return true;
+        }
+        long bitCount = bits.length * 8L;
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int hash1 = murmur3(SEED_1, key);
+        int hash2 = murmur3(SEED_2, key);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            long bit = Integer.toUnsignedLong(hash1 + i * hash2) % bitCount;
+            if ((bits[(int) (bit / 8)] & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("fallthrough") // the tail bytes accumulate through the cases
+    private static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int hash = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[i * 4] & 0xff) | (data[i * 4 + 1] & 0xff) << 8
+                    | (data[i * 4 + 2] & 0xff) << 16 | (data[i * 4 + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+            hash = Integer.rotateLeft(hash, 13);
+            hash = hash * 5 + 0xe6546b64;
+        }
+        int tail = blocks * 4;
+        int k = 0;
+        switch (data.length & 3) {
+            case 3:
+                k ^= (data[tail + 2] & 0xff) << 16;
+            case 2:
+                k ^= (data[tail + 1] & 0xff) << 8;
+            case 1:
+                k ^= data[tail] & 0xff;
+                k *= c1;
+                k = Integer.rotateLeft(k, 15);
+                k *= c2;
+                hash ^= k;
+        }
+        hash ^= data.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
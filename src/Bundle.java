@@ -0,0 +1,330 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A single file carrying history between repositories, so a copy moves one
+ * stream instead of every loose object file.
+ *
+ * The file starts with a text header: the signature line, one "-commit"
+ * line per prerequisite the receiver must already have, one "commit ref"
+ * line per ref carried, and a blank line. The objects follow as records of
+ * a 20-byte id, a 4-byte length and the bytes as stored (a chunked blob is
+ * its manifest plus its chunks), closed by a record of length -1.
+ *
+ * An incremental bundle leaves out everything reachable from its base
+ * commits; the boundary commits where the walk stopped become its
+ * prerequisites.
+ *
+ * A bundle is not trusted on the way in: before its refs are handed back,
+ * everything it added is walked from the refs it carries, and it is
+ * refused if an object is missing or a tree holds a path that would check
+ * out outside the working directory or into .git.
+ */
+public class Bundle {
+    static final String SIGNATURE = "# lit bundle v1";
+    private static final int END_OF_OBJECTS = -1;
+    // Objects read from the store or the bundle but not yet written out
+    private static final int WINDOW = 1024;
+    private static final int BATCH = 256;
+    // Bytes of records read from the bundle but not yet written; a larger record waits for the whole budget
+    private static final int MAX_BYTES_IN_FLIGHT = 64 * 1024 * 1024;
+
+    public static final class Header {
+        public final List<ObjectId> prerequisites = new ArrayList<>();
+        // Ref name -> commit, in header order
+        public final Map<String, ObjectId> refs = new LinkedHashMap<>();
+    }
+
+    private final Path gitDir;
+    private final ObjectStore objects;
+    private final Consumer<String> out;
+
+    public Bundle(Path gitDir, ObjectStore objects, Consumer<String> out) {
+        this.gitDir = gitDir;
+        this.objects = objects;
+        this.out = out;
+    }
+
+    /**
+     * Writes a bundle of refs and everything they reach, minus what the
+     * excluded commits reach. The file is replaced only once it is complete.
+     */
+    public void create(Path file, Map<String, ObjectId> refs, Collection<ObjectId> excluded) throws IOException {
+        List<String> missing = new ArrayList<>();
+        Reachability base = new Reachability(gitDir, objects, (type, hash, referencedBy) -> missing.add(type + " " + hash));
+        for (ObjectId commit : excluded) {
+            base.markCommit(commit.name(), "base");
+        }
+        List<ObjectId> ids = new ArrayList<>();
+        Reachability walk = new Reachability(gitDir, objects, new Reachability.Listener() {
+            @Override
+            public void missing(String type, String hash, String referencedBy) {
+                missing.add(type + " " + hash);
+            }
+
+            @Override
+            public void reached(String type, String hash) {
+                ids.add(ObjectId.fromString(hash));
+            }
+        });
+        walk.stopAt(base);
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            walk.markCommit(ref.getValue().name(), ref.getKey());
+        }
+        if (!missing.isEmpty()) {
+            throw new IOException("missing " + missing.get(0)
+                    + (missing.size() > 1 ? " and " + (missing.size() - 1) + " more" : "") + "; run fsck");
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long[] written = new long[2]; // objects, bytes
+        try {
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                StringBuilder header = new StringBuilder(SIGNATURE).append('\n');
+                for (String prerequisite : walk.getBoundaryCommits()) {
+                    header.append('-').append(prerequisite).append('\n');
+                }
+                for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+                    header.append(ref.getValue()).append(' ').append(ref.getKey()).append('\n');
+                }
+                stream.write(header.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+                writeObjects(stream, ids, written);
+                stream.write(new byte[20]);
+                stream.writeInt(END_OF_OBJECTS);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        out.accept("Bundled " + refs.size() + " ref(s), " + written[0] + " object(s), " + written[1] / 1024 + " KiB"
+                + (walk.getBoundaryCommits().isEmpty() ? "."
+                : "; requires " + walk.getBoundaryCommits().size() + " prerequisite commit(s)."));
+    }
+
+    /**
+     * Streams the objects from the store in batches, writing each record as
+     * its read completes.
+     */
+    private void writeObjects(DataOutputStream stream, List<ObjectId> ids, long[] written) throws IOException {
+        Semaphore window = new Semaphore(WINDOW);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        try {
+            for (int start = 0; start < ids.size() && failure.get() == null; start += BATCH) {
+                List<ObjectId> batch = ids.subList(start, Math.min(ids.size(), start + BATCH));
+                window.acquire(batch.size());
+                for (Map.Entry<ObjectId, CompletableFuture<byte[]>> read : objects.readAll(batch).entrySet()) {
+                    read.getValue().whenComplete((content, error) -> {
+                        try {
+                            if (error != null) {
+                                throw error instanceof IOException ? (IOException) error : new IOException(error);
+                            }
+                            synchronized (stream) {
+                                stream.write(read.getKey().toBytes());
+                                stream.writeInt(content.length);
+                                stream.write(content);
+                                written[0]++;
+                                written[1] += content.length;
+                            }
+                        } catch (IOException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            window.release();
+                        }
+                    });
+                }
+            }
+            window.acquire(WINDOW);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing bundle", e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static Header readHeader(DataInputStream stream) throws IOException {
+        if (!SIGNATURE.equals(readLine(stream))) {
+            throw new IOException("not a bundle");
+        }
+        Header header = new Header();
+        for (String line = readLine(stream); !line.isEmpty(); line = readLine(stream)) {
+            if (line.startsWith("-") && ObjectId.isValid(line.substring(1))) {
+                header.prerequisites.add(ObjectId.fromString(line.substring(1)));
+            } else if (line.length() > 41 && ObjectId.isValid(line.substring(0, 40)) && line.charAt(40) == ' ') {
+                header.refs.put(line.substring(41), ObjectId.fromString(line.substring(0, 40)));
+            } else {
+                throw new IOException("malformed bundle header line '" + line + "'");
+            }
+        }
+        return header;
+    }
+
+    private static String readLine(DataInputStream stream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = stream.read(); b != '\n'; b = stream.read()) {
+            if (b == -1) {
+                throw new IOException("bundle is truncated");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies a bundle's objects into the store and returns its header; refs
+     * are left to the caller. Objects are hash-verified and written on
+     * virtual threads while the file is still being read, with a bounded
+     * number of records and bytes in flight. Chunk manifests are verified
+     * last, once their chunks are in place, and then the new objects are
+     * checked for completeness and safe paths.
+     *
+     * @throws RepositoryException if the store lacks a prerequisite commit
+     */
+    public Header unbundle(Path file) throws IOException, RepositoryException {
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Header header = readHeader(stream);
+            List<String> lacking = new ArrayList<>();
+            for (ObjectId prerequisite : header.prerequisites) {
+                if (!objects.has(prerequisite)) {
+                    lacking.add(prerequisite.name());
+                }
+            }
+            if (!lacking.isEmpty()) {
+                throw new RepositoryException("Error: Repository lacks these prerequisite commits:\n"
+                        + String.join("\n", lacking));
+            }
+
+            ObjectIdSet imported = new ObjectIdSet();
+            AtomicLong added = new AtomicLong();
+            AtomicLong present = new AtomicLong();
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            Queue<Map.Entry<ObjectId, byte[]>> manifests = new ConcurrentLinkedQueue<>();
+            Semaphore window = new Semaphore(WINDOW);
+            Semaphore bytes = new Semaphore(MAX_BYTES_IN_FLIGHT);
+            try (ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor()) {
+                byte[] raw = new byte[20];
+                while (failure.get() == null) {
+                    int length;
+                    try {
+                        stream.readFully(raw);
+                        length = stream.readInt();
+                    } catch (EOFException e) {
+                        throw new IOException("bundle is truncated", e);
+                    }
+                    if (length == END_OF_OBJECTS) {
+                        break;
+                    } else if (length < 0) {
+                        throw new IOException("malformed bundle record");
+                    }
+                    // Wait for room before allocating, so the record is never
+                    // held alongside more than the budget of earlier ones
+                    int cost = Math.min(length, MAX_BYTES_IN_FLIGHT);
+                    window.acquire();
+                    bytes.acquire(cost);
+                    byte[] content = new byte[length];
+                    try {
+                        stream.readFully(content);
+                    } catch (EOFException e) {
+                        throw new IOException("bundle is truncated", e);
+                    }
+                    ObjectId id = ObjectId.fromBytes(raw);
+                    writers.execute(() -> {
+                        try {
+                            if (objects.freshen(id)) {
+                                present.incrementAndGet();
+                            } else if (ChunkStore.isManifest(id, content)) {
+                                manifests.add(Map.entry(id, content));
+                            } else {
+                                store(id, content, ObjectStore.hash(content).name());
+                                imported.add(id.name());
+                                added.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            bytes.release(cost);
+                            window.release();
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading bundle", e);
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            for (Map.Entry<ObjectId, byte[]> manifest : manifests) {
+                store(manifest.getKey(), manifest.getValue(),
+                        objects.getChunkStore().contentHash(manifest.getValue()));
+                imported.add(manifest.getKey().name());
+                added.incrementAndGet();
+            }
+            verifyImported(header, imported);
+            out.accept("Unpacked " + added.get() + " object(s)"
+                    + (present.get() > 0 ? ", " + present.get() + " already present." : "."));
+            return header;
+        }
+    }
+
+    /**
+     * Walks the bundle's refs through the objects it added, trusting objects
+     * the store already had, and fails if anything is missing or an added
+     * tree holds an unsafe path. The objects stay in the store either way,
+     * unreferenced, for prune to collect.
+     */
+    private void verifyImported(Header header, ObjectIdSet imported) throws IOException {
+        List<String> missing = new ArrayList<>();
+        List<ObjectId> trees = new ArrayList<>();
+        Reachability walk = new Reachability(gitDir, objects, new Reachability.Listener() {
+            @Override
+            public void missing(String type, String hash, String referencedBy) {
+                missing.add(type + " " + hash + " (referenced by " + referencedBy + ")");
+            }
+
+            @Override
+            public void reached(String type, String hash) {
+                if (type.equals("tree") && imported.contains(hash)) {
+                    trees.add(ObjectId.fromString(hash));
+                }
+            }
+        });
+        walk.expandOnly(imported);
+        for (Map.Entry<String, ObjectId> ref : header.refs.entrySet()) {
+            walk.markCommit(ref.getValue().name(), ref.getKey());
+        }
+        if (!missing.isEmpty()) {
+            throw new IOException("bundle is incomplete: missing " + missing.get(0)
+                    + (missing.size() > 1 ? " and " + (missing.size() - 1) + " more" : ""));
+        }
+        for (int start = 0; start < trees.size(); start += BATCH) {
+            for (Tree tree : objects.readTrees(trees.subList(start, Math.min(trees.size(), start + BATCH))).values()) {
+                for (String path : tree.getEntries().keySet()) {
+                    if (!Tree.isSafePath(path)) {
+                        throw new IOException("bundle has unsafe path '" + path + "' in tree " + tree.getId());
+                    }
+                }
+            }
+        }
+    }
+
+    private void store(ObjectId id, byte[] content, String actual) throws IOException {
+        if (!actual.equals(id.name())) {
+            throw new IOException("corrupt object " + id + " in bundle (content hashes to " + actual + ")");
+        }
+        objects.write(id, content);
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Per-commit changed-path Bloom filters, kept in .git/objects/info/changed-paths.
+ *
+ * The file is a sequence of records (20-byte commit id, flag byte, 4-byte
+ * length, filter bits, CRC-32 of all of these) that is only ever appended
+ * to, so filters can be added as commits are created or first walked.
+ *
+ * The filters are only a shortcut, so a damaged file never fails a command.
+ * Loading stops at the first record that is cut short, too long or fails
+ * its checksum, and the file is truncated there before anything more is
+ * appended. The commits after that point are filtered again as they are
+ * walked. If the file cannot be read or repaired, no filters are used.
+ */
+public class ChangedPathIndex {
+    private static final byte FLAG_TOO_LARGE = 1;
+    private static final int RECORD_HEADER = 20 + 1 + 4;
+    // Far above the largest filter BloomFilter builds for MAX_CHANGED_PATHS paths
+    private static final int MAX_FILTER_BYTES = 64 * 1024;
+
+    private final Path file;
+    private volatile Map<ObjectId, BloomFilter> filters;
+    // Set when the file could not be loaded or repaired; nothing is appended then
+    private volatile boolean unusable;
+
+    public ChangedPathIndex(Path objectsDir) {
+        this.file = objectsDir.resolve("info").resolve("changed-paths");
+    }
+
+    /**
+     * Filter for a commit, or null if none is stored (or the file is unusable).
+     */
+    public BloomFilter get(ObjectId commit) {
+        return load().get(commit);
+    }
+
+    public synchronized void put(ObjectId commit, BloomFilter filter) throws IOException {
+        Map<ObjectId, BloomFilter> loaded = load();
+        if (unusable || loaded.containsKey(commit)) {
+            return;
+        }
+        byte[] bits = filter.getBits();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + bits.length + 4);
+        record.put(commit.toBytes());
+        record.put(filter.isTooLarge() ? FLAG_TOO_LARGE : 0);
+        record.putInt(bits.length);
+        record.put(bits);
+        record.putInt(checksum(record.array(), record.position()));
+        record.flip();
+
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        }
+        loaded.put(commit, filter);
+    }
+
+    private Map<ObjectId, BloomFilter> load() {
+        Map<ObjectId, BloomFilter> loaded = filters;
+        if (loaded != null) {
+            return loaded;
+        }
+        synchronized (this) {
+            if (filters == null) {
+                try {
+                    filters = read();
+                } catch (IOException e) {
+                    unusable = true;
+                    filters = new ConcurrentHashMap<>();
+                }
+            }
+            return filters;
+        }
+    }
+
+    /**
+     * Reads every intact record and truncates the file after the last one.
+     */
+    private Map<ObjectId, BloomFilter> read() throws IOException {
+        Map<ObjectId, BloomFilter> read = new ConcurrentHashMap<>();
+        if (!Files.exists(file)) {
+            return read;
+        }
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int valid = 0;
+        while (buffer.remaining() >= RECORD_HEADER) {
+            int start = buffer.position();
+            byte[] id = new byte[20];
+            buffer.get(id);
+            byte flags = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || length > MAX_FILTER_BYTES || buffer.remaining() < length + 4) {
+                break;
+            }
+            byte[] bits = new byte[length];
+            buffer.get(bits);
+            int stored = buffer.getInt();
+            if (stored != checksum(data, start, buffer.position() - 4 - start)) {
+                break;
+            }
+            read.put(ObjectId.fromBytes(id), BloomFilter.fromBytes(bits, (flags & FLAG_TOO_LARGE) != 0));
+            valid = buffer.position();
+        }
+        if (valid < data.length) {
+            // Drop the damaged tail so the next append starts on a record boundary
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return read;
+    }
+
+    private static int checksum(byte[] data, int length) {
+        return checksum(data, 0, length);
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Chunked representation for large blobs.
+ *
+ * A large file is split with FastCDC-style content-defined chunking; every
+ * chunk is stored once under .git/objects by its own SHA-1, and the blob id
+ * (the SHA-1 of the whole file, as for any other blob) holds a manifest that
+ * lists the chunk ids in order. Because cut points follow the content, an
+ * edit only changes the chunks around it and the rest are shared with
+ * earlier versions of the file.
+ */
+public class ChunkStore {
+    static final String MANIFEST_HEADER = "lit-chunked-blob v1";
+
+    // FastCDC with normalized chunking: a stricter mask before the average
+    // size and a looser one after it keeps chunk sizes close to AVG_SIZE.
+    private static final int MIN_SIZE = 256 * 1024;
+    private static final int AVG_SIZE = 1024 * 1024;
+    private static final int MAX_SIZE = 4 * 1024 * 1024;
+    private static final long MASK_S = topBits(22);
+    private static final long MASK_L = topBits(18);
+
+    private static final long[] GEAR = new long[256];
+    static {
+        SplittableRandom random = new SplittableRandom(0xFA57CDCL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private static final int READ_BUFFER = 1024 * 1024;
+
+    /**
+     * Result of chunking a file: the blob id of the whole content and the
+     * manifest to store under it. Chunks are already written at this point.
+     */
+    public static class Result {
+        public final String hash;
+        public final byte[] manifest;
+
+        Result(String hash, byte[] manifest) {
+            this.hash = hash;
+            this.manifest = manifest;
+        }
+    }
+
+    private final ObjectStore objects;
+
+    public ChunkStore(ObjectStore objects) {
+        this.objects = objects;
+    }
+
+    /**
+     * Reads the file once, hashing it, cutting it into chunks and storing any
+     * chunk that is not already present; chunks already present are freshened.
+     */
+    public Result write(Path file) throws IOException {
+        MessageDigest fileDigest = sha1();
+        MessageDigest chunkDigest = sha1();
+        StringBuilder manifest = new StringBuilder();
+        byte[] chunk = new byte[MAX_SIZE];
+        byte[] buffer = new byte[READ_BUFFER];
+        int chunkLength = 0;
+        long fingerprint = 0;
+        long totalSize = 0;
+        List<String> entries = new ArrayList<>();
+
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                fileDigest.update(buffer, 0, read);
+                totalSize += read;
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    chunk[chunkLength++] = b;
+                    fingerprint = (fingerprint << 1) + GEAR[b & 0xFF];
+                    if (isCutPoint(fingerprint, chunkLength)) {
+                        storeChunk(chunkDigest, chunk, chunkLength, entries);
+                        chunkLength = 0;
+                        fingerprint = 0;
+                    }
+                }
+            }
+        }
+        if (chunkLength > 0) {
+            storeChunk(chunkDigest, chunk, chunkLength, entries);
+        }
+
+        manifest.append(MANIFEST_HEADER).append("\n");
+        manifest.append("size ").append(totalSize).append("\n");
+        for (String entry : entries) {
+            manifest.append(entry).append("\n");
+        }
+        return new Result(toHex(fileDigest.digest()), manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isCutPoint(long fingerprint, int length) {
+        if (length < MIN_SIZE) {
+            return false;
+        }
+        if (length >= MAX_SIZE) {
+            return true;
+        }
+        long mask = length < AVG_SIZE ? MASK_S : MASK_L;
+        return (fingerprint & mask) == 0;
+    }
+
+    private void storeChunk(MessageDigest digest, byte[] chunk, int length, List<String> entries) throws IOException {
+        digest.reset();
+        digest.update(chunk, 0, length);
+        String hash = toHex(digest.digest());
+        entries.add(hash + " " + length);
+
+        Path chunkPath = objectPath(hash);
+        if (ObjectStore.freshen(chunkPath)) {
+            // Reused by the new manifest, so it must survive a concurrent prune
+            return;
+        }
+        // Write through a temporary file so an interrupted add never leaves a
+        // truncated chunk that later versions would silently reuse
+        Files.createDirectories(chunkPath.getParent());
+        Path temp = Files.createTempFile(chunkPath.getParent(), "chunk", ".tmp");
+        try {
+            Files.write(temp, Arrays.copyOf(chunk, length));
+            Files.move(temp, chunkPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Whether the object stored under id at this path is a chunk manifest
+     * rather than raw content. A manifest is stored under the hash of the
+     * file it describes, never under its own, so a blob that merely starts
+     * with the header is told apart by hashing it.
+     */
+    public static boolean isManifest(ObjectId id, Path objectPath) throws IOException {
+        byte[] header = MANIFEST_HEADER.getBytes(StandardCharsets.UTF_8);
+        byte[] start = new byte[header.length + 1];
+        int filled = 0;
+        try (InputStream in = Files.newInputStream(objectPath)) {
+            int read;
+            while (filled < start.length && (read = in.read(start, filled, start.length - filled)) != -1) {
+                filled += read;
+            }
+        }
+        return filled == start.length && hasHeader(start) && !ObjectStore.hashFile(objectPath).equals(id);
+    }
+
+    /**
+     * Same check on an object already read into memory.
+     */
+    public static boolean isManifest(ObjectId id, byte[] content) {
+        return hasHeader(content) && !ObjectStore.hash(content).equals(id);
+    }
+
+    private static boolean hasHeader(byte[] content) {
+        byte[] header = MANIFEST_HEADER.getBytes(StandardCharsets.UTF_8);
+        return content.length > header.length && content[header.length] == '\n'
+                && Arrays.equals(content, 0, header.length, header, 0, header.length);
+    }
+
+    /**
+     * Returns chunk id -> bytes of the file covered by that chunk, in file order.
+     */
+    public static LinkedHashMap<String, Integer> readManifest(Path manifestPath) throws IOException {
+        LinkedHashMap<String, Integer> chunks = new LinkedHashMap<>();
+        for (String[] entry : manifestEntries(manifestPath)) {
+            chunks.merge(entry[0], Integer.parseInt(entry[1]), Integer::sum);
+        }
+        return chunks;
+    }
+
+    private static List<String[]> manifestEntries(Path manifestPath) throws IOException {
+        return manifestEntries(Files.readAllLines(manifestPath, StandardCharsets.UTF_8));
+    }
+
+    private static List<String[]> manifestEntries(List<String> lines) {
+        List<String[]> entries = new ArrayList<>();
+        for (String line : lines.subList(Math.min(2, lines.size()), lines.size())) {
+            String[] parts = line.split(" ");
+            if (parts.length == 2) {
+                entries.add(parts);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * SHA-1 of the file a manifest describes, streamed from its chunks; this
+     * is the id the manifest must be stored under.
+     */
+    public String contentHash(byte[] manifest) throws IOException {
+        MessageDigest digest = sha1();
+        byte[] buffer = new byte[64 * 1024];
+        for (String[] entry : manifestEntries(new String(manifest, StandardCharsets.UTF_8).lines().toList())) {
+            Path chunk = ObjectId.isValid(entry[0]) ? objectPath(entry[0]) : null;
+            if (chunk == null || !Files.exists(chunk)) {
+                throw new IOException("chunk " + entry[0] + " is missing");
+            }
+            try (InputStream in = Files.newInputStream(chunk)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Reassembles a chunked blob into target, reading chunks in parallel on the
+     * executor and writing each one at its offset.
+     */
+    public void restore(Path manifestPath, Path target, ExecutorService executor) throws IOException {
+        List<String[]> chunks = manifestEntries(manifestPath);
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Future<?>> pending = new ArrayList<>();
+            long offset = 0;
+            for (String[] entry : chunks) {
+                String hash = entry[0];
+                int length = Integer.parseInt(entry[1]);
+                long position = offset;
+                pending.add(executor.submit(() -> {
+                    byte[] data = Files.readAllBytes(objectPath(hash));
+                    if (data.length != length) {
+                        throw new IOException("Chunk " + hash + " has " + data.length + " bytes, expected " + length);
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    long at = position;
+                    while (buffer.hasRemaining()) {
+                        at += channel.write(buffer, at);
+                    }
+                    return null;
+                }));
+                offset += length;
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while restoring " + target, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private Path objectPath(String hash) {
+        return objects.path(ObjectId.fromString(hash));
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long topBits(int bits) {
+        return ((1L << bits) - 1) << (64 - bits);
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
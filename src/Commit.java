@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed commit object. Immutable, so it is safe to share between threads.
+ */
+public final class Commit {
+    private final ObjectId id;
+    private final ObjectId tree;
+    private final List<ObjectId> parents;
+    private final String author;
+    private final String message;
+
+    Commit(ObjectId id, ObjectId tree, List<ObjectId> parents, String author, String message) {
+        this.id = id;
+        this.tree = tree;
+        this.parents = Collections.unmodifiableList(new ArrayList<>(parents));
+        this.author = author;
+        this.message = message;
+    }
+
+    /**
+     * @throws IOException if the object is not a well-formed commit
+     */
+    static Commit parse(ObjectId id, List<String> lines) throws IOException {
+        ObjectId tree = null;
+        List<ObjectId> parents = new ArrayList<>();
+        String author = "Unknown";
+        String message = "";
+        for (String line : lines) {
+            if (line.startsWith("tree ") && tree == null) {
+                tree = parseId(id, line.substring(5));
+            } else if (line.startsWith("parent ")) {
+                parents.add(parseId(id, line.substring(7)));
+            } else if (line.startsWith("author ")) {
+                String name = line.substring(7).trim();
+                if (!name.isEmpty()) {
+                    author = name.split(" ")[0];
+                }
+            } else if (line.startsWith("message ")) {
+                message = line.substring(8).trim();
+            }
+        }
+        if (tree == null) {
+            throw new IOException("Object " + id + " is not a commit");
+        }
+        return new Commit(id, tree, parents, author, message);
+    }
+
+    private static ObjectId parseId(ObjectId commit, String hex) throws IOException {
+        if (!ObjectId.isValid(hex.trim())) {
+            throw new IOException("Commit " + commit + " is corrupt: bad object id '" + hex + "'");
+        }
+        return ObjectId.fromString(hex);
+    }
+
+    /**
+     * Object content for a new commit; the id is the hash of these bytes.
+     */
+    static String format(ObjectId tree, List<ObjectId> parents, String author, String message) {
+        StringBuilder content = new StringBuilder();
+        content.append("tree ").append(tree).append("\n");
+        for (ObjectId parent : parents) {
+            content.append("parent ").append(parent).append("\n");
+        }
+        content.append("author ").append(author).append("\n");
+        content.append("message ").append(message).append("\n");
+        return content.toString();
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public ObjectId getTree() {
+        return tree;
+    }
+
+    public List<ObjectId> getParents() {
+        return parents;
+    }
+
+    /**
+     * First parent, or null for a root commit.
+     */
+    public ObjectId getFirstParent() {
+        return parents.isEmpty() ? null : parents.get(0);
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * One change between two states, in name-status form.
+ */
+public final class DiffEntry {
+    public enum ChangeType { ADDED, MODIFIED, DELETED, RENAMED, COPIED }
+
+    private final ChangeType type;
+    private final String oldPath;
+    private final String newPath;
+    private final int score;
+
+    DiffEntry(ChangeType type, String oldPath, String newPath, int score) {
+        this.type = type;
+        this.oldPath = oldPath;
+        this.newPath = newPath;
+        this.score = score;
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    /**
+     * Null for added files.
+     */
+    public String getOldPath() {
+        return oldPath;
+    }
+
+    /**
+     * Null for deleted files.
+     */
+    public String getNewPath() {
+        return newPath;
+    }
+
+    /**
+     * Similarity 0-100 for renames and copies.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    public String getPath() {
+        return newPath != null ? newPath : oldPath;
+    }
+
+    /**
+     * Formats the entry like "git diff --name-status".
+     */
+    @Override
+    public String toString() {
+        switch (type) {
+            case ADDED:
+                return "A\t" + newPath;
+            case MODIFIED:
+                return "M\t" + newPath;
+            case DELETED:
+                return "D\t" + oldPath;
+            default:
+                return (type == ChangeType.RENAMED ? "R" : "C") + String.format("%03d", score)
+                        + "\t" + oldPath + "\t" + newPath;
+        }
+    }
+}
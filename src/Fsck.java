@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Verifies the object store.
+ *
+ * First every object reachable from refs, HEAD and the index is marked and
+ * missing ones are reported. Then the files under .git/objects are streamed
+ * one fan-out directory at a time and handed to the object store in batches;
+ * each object is re-hashed as soon as its read completes and compared with
+ * its name, and objects the walk did not reach are reported as dangling.
+ * Objects above STREAM_THRESHOLD are instead hashed as streams on their own
+ * virtual threads, so no large object is ever held in memory. A bounded
+ * window of submitted objects keeps memory flat however many objects there
+ * are.
+ */
+public class Fsck {
+    // Objects submitted to the store but not yet checked
+    private static final int WINDOW = 1024;
+    private static final int BATCH = 256;
+    // Larger objects are hashed from disk instead of being read whole
+    private static final long STREAM_THRESHOLD = 1024 * 1024;
+    private static final int MAX_STREAMS = Runtime.getRuntime().availableProcessors();
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path gitDir;
+    private final ObjectStore objects;
+    private final Consumer<String> out;
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong problems = new AtomicLong();
+    private final AtomicLong dangling = new AtomicLong();
+
+    public Fsck(Path gitDir, ObjectStore objects, Consumer<String> out) {
+        this.gitDir = gitDir;
+        this.objects = objects;
+        this.out = out;
+    }
+
+    /**
+     * Reports every problem found and a summary line; returns true when the store is sound.
+     */
+    public boolean run() throws IOException {
+        long start = System.nanoTime();
+
+        out.accept("Checking connectivity...");
+        Reachability reachability = new Reachability(gitDir, objects, (type, hash, referencedBy) -> {
+            problems.incrementAndGet();
+            out.accept("missing " + type + " " + hash + " (referenced by " + referencedBy + ")");
+        });
+        reachability.markFromRoots();
+
+        out.accept("Checking objects...");
+        Semaphore window = new Semaphore(WINDOW);
+        Semaphore streams = new Semaphore(MAX_STREAMS);
+        List<ObjectId> batch = new ArrayList<>();
+        long[] lastProgress = {System.nanoTime()};
+        try (ExecutorService streamers = Executors.newVirtualThreadPerTaskExecutor()) {
+            LooseObjects.forEach(objects, (hash, object) -> {
+                if (hash == null) {
+                    problems.incrementAndGet();
+                    out.accept("garbage file " + gitDir.relativize(object));
+                    return;
+                }
+                if (Files.size(object) > STREAM_THRESHOLD) {
+                    streams.acquire();
+                    streamers.execute(() -> {
+                        try {
+                            checkStreamed(hash, object, reachability);
+                        } finally {
+                            streams.release();
+                        }
+                    });
+                    return;
+                }
+                if (!batch.isEmpty() && (batch.size() == BATCH
+                        || !batch.get(0).name().regionMatches(0, hash, 0, 2))) {
+                    submit(batch, window, reachability);
+                }
+                batch.add(ObjectId.fromString(hash));
+                if (System.nanoTime() - lastProgress[0] > PROGRESS_INTERVAL_NANOS) {
+                    lastProgress[0] = System.nanoTime();
+                    printProgress(start);
+                }
+            });
+            submit(batch, window, reachability);
+            window.acquire(WINDOW);
+            streams.acquire(MAX_STREAMS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while checking objects", e);
+        }
+
+        printProgress(start);
+        out.accept(problems.get() == 0
+                ? "No problems found (" + dangling.get() + " dangling)."
+                : problems.get() + " problem(s) found (" + dangling.get() + " dangling).");
+        return problems.get() == 0;
+    }
+
+    private void submit(List<ObjectId> batch, Semaphore window, Reachability reachability)
+            throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        window.acquire(batch.size());
+        // The futures are not kept, so each object is dropped once it is checked
+        objects.readAll(batch).forEach((id, read) -> read.whenComplete((content, error) -> {
+            try {
+                check(id, content, error, reachability);
+            } finally {
+                window.release();
+            }
+        }));
+        batch.clear();
+    }
+
+    private void check(ObjectId id, byte[] content, Throwable error, Reachability reachability) {
+        String hash = id.name();
+        try {
+            if (error != null) {
+                throw error instanceof IOException ? (IOException) error : new IOException(error);
+            }
+            String type = reachability.typeOf(hash);
+            boolean manifest = (type == null || type.equals("blob")) && ChunkStore.isManifest(id, content);
+            String actual = manifest ? objects.getChunkStore().contentHash(content) : ObjectStore.hash(content).name();
+            verify(hash, type, manifest, actual, content.length);
+        } catch (IOException e) {
+            problems.incrementAndGet();
+            out.accept("unreadable object " + hash + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Same checks for an object too large to read whole.
+     */
+    private void checkStreamed(String hash, Path object, Reachability reachability) {
+        try {
+            String type = reachability.typeOf(hash);
+            boolean manifest = (type == null || type.equals("blob")) && ChunkStore.isManifest(ObjectId.fromString(hash), object);
+            String actual = manifest
+                    ? objects.getChunkStore().contentHash(Files.readAllBytes(object))
+                    : ObjectStore.hashFile(object).name();
+            verify(hash, type, manifest, actual, Files.size(object));
+        } catch (IOException | RuntimeException e) {
+            problems.incrementAndGet();
+            out.accept("unreadable object " + hash + ": " + e.getMessage());
+        }
+    }
+
+    private void verify(String hash, String type, boolean manifest, String actual, long size) throws IOException {
+        if (!actual.equals(hash)) {
+            problems.incrementAndGet();
+            out.accept("corrupt object " + hash + " (content hashes to " + actual + ")");
+        }
+        if (type == null) {
+            dangling.incrementAndGet();
+            out.accept("dangling " + (manifest ? "blob" : sniffType(objects.path(ObjectId.fromString(hash)))) + " " + hash);
+        }
+        checked.incrementAndGet();
+        bytes.addAndGet(size);
+    }
+
+    /**
+     * Best guess at the type of an object the walk did not reach.
+     */
+    static String sniffType(Path object) throws IOException {
+        byte[] head = new byte[128];
+        int filled = 0;
+        try (InputStream in = Files.newInputStream(object)) {
+            int read;
+            while (filled < head.length && (read = in.read(head, filled, head.length - filled)) != -1) {
+                filled += read;
+            }
+        }
+        String start = new String(head, 0, filled, StandardCharsets.ISO_8859_1);
+        if (start.startsWith("tree ")) {
+            return "commit";
+        }
+        if (start.length() > 41 && ObjectId.isValid(start.substring(0, 40)) && start.charAt(40) == ' ') {
+            return "tree";
+        }
+        return "blob";
+    }
+
+    private void printProgress(long start) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        out.accept(String.format("Checked %d objects, %.1f MB (%.0f objects/s, %.1f MB/s)",
+                checked.get(), bytes.get() / 1e6, checked.get() / seconds, bytes.get() / 1e6 / seconds));
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * The staging area, stored in .git/index with one line per entry. Entries
+ * outside the sparse-checkout cone are written as "S hash path".
+ *
+ * Other entries are written as "hash mtime size path": the file's
+ * modification time and size as of when its blob was known to match, or -1
+ * for both when unknown, so an unchanged file can be recognised without
+ * reading it. The path comes last and runs to the end of the line, so it
+ * may contain spaces. Stat data from the last couple of seconds before the
+ * index is written is dropped: a file changed again in the same timestamp
+ * tick would otherwise look clean. Plain "hash path" lines from older
+ * indexes are still read, with unknown stat data.
+ */
+public class Index {
+    static final String SKIP_WORKTREE_PREFIX = "S ";
+    // Modification times closer than this to the index write are not trusted
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    public static final class Entry {
+        public final ObjectId id;
+        public final boolean skipWorktree;
+        // -1 when the stat data is unknown
+        public final long modified;
+        public final long size;
+
+        Entry(ObjectId id, boolean skipWorktree, long modified, long size) {
+            this.id = id;
+            this.skipWorktree = skipWorktree;
+            this.modified = modified;
+            this.size = size;
+        }
+
+        boolean hasStat() {
+            return modified >= 0;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private boolean dirty;
+
+    public static Index read(Path indexFile) throws IOException {
+        Index index = new Index();
+        if (!Files.exists(indexFile)) {
+            return index;
+        }
+        for (String line : Files.readAllLines(indexFile)) {
+            if (line.startsWith(SKIP_WORKTREE_PREFIX)) {
+                String[] parts = line.substring(SKIP_WORKTREE_PREFIX.length()).split(" ", 2);
+                if (parts.length == 2 && ObjectId.isValid(parts[0])) {
+                    index.entries.put(parts[1], new Entry(ObjectId.fromString(parts[0]), true, -1, -1));
+                }
+                continue;
+            }
+            String[] parts = line.split(" ", 4);
+            if (parts.length < 2 || !ObjectId.isValid(parts[0])) {
+                continue;
+            }
+            ObjectId id = ObjectId.fromString(parts[0]);
+            if (parts.length == 4 && isStat(parts[1]) && isStat(parts[2])) {
+                index.entries.put(parts[3], new Entry(id, false, Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            } else {
+                index.entries.put(line.split(" ", 2)[1], new Entry(id, false, -1, -1));
+            }
+        }
+        return index;
+    }
+
+    private static boolean isStat(String field) {
+        return field.equals("-1") || (!field.isEmpty() && field.length() < 19 && field.chars().allMatch(Character::isDigit));
+    }
+
+    public void write(Path indexFile) throws IOException {
+        long racyAfter = System.currentTimeMillis() - RACY_WINDOW_MILLIS;
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.skipWorktree) {
+                lines.add(SKIP_WORKTREE_PREFIX + value.id + " " + entry.getKey());
+            } else if (value.hasStat() && value.modified < racyAfter) {
+                lines.add(value.id + " " + value.modified + " " + value.size + " " + entry.getKey());
+            } else {
+                lines.add(value.id + " -1 -1 " + entry.getKey());
+            }
+        }
+        // Created exclusively: a second writer fails instead of silently replacing this one's index
+        Path temp = indexFile.resolveSibling("index.lock");
+        try {
+            Files.createFile(temp);
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Unable to create " + temp + ": another process is writing the index."
+                    + " If none is running, remove the file and try again.", e);
+        }
+        try {
+            Files.write(temp, lines);
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        dirty = false;
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * True when the entry's stat data still matches file, so the file holds
+     * the entry's blob without having to be hashed.
+     */
+    public boolean isUpToDate(String path, Path file) throws IOException {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.skipWorktree || !entry.hasStat()) {
+            return false;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return attributes.isRegularFile() && attributes.size() == entry.size
+                && attributes.lastModifiedTime().toMillis() == entry.modified;
+    }
+
+    /**
+     * Stages a path; a restaged path moves to the end, as before.
+     */
+    public void put(String path, ObjectId id) {
+        entries.remove(path);
+        entries.put(path, new Entry(id, false, -1, -1));
+        dirty = true;
+    }
+
+    /**
+     * Stages a path whose file is known to hold id, recording its stat data.
+     */
+    public void put(String path, ObjectId id, Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        entries.remove(path);
+        entries.put(path, new Entry(id, false, attributes.lastModifiedTime().toMillis(), attributes.size()));
+        dirty = true;
+    }
+
+    /**
+     * Records fresh stat data for an entry whose file was found to still hold
+     * its blob, keeping the entry where it is.
+     */
+    public void refresh(String path, Path file) throws IOException {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.skipWorktree) {
+            return;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (entry.modified != modified || entry.size != attributes.size()) {
+            entries.put(path, new Entry(entry.id, false, modified, attributes.size()));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Stages a path with an entry from another index, keeping its stat data.
+     */
+    void put(String path, Entry entry) {
+        entries.remove(path);
+        entries.put(path, entry);
+        dirty = true;
+    }
+
+    /**
+     * Unstages a path; returns the entry that was removed, or null.
+     */
+    public Entry remove(String path) {
+        Entry removed = entries.remove(path);
+        if (removed != null) {
+            dirty = true;
+        }
+        return removed;
+    }
+
+    public void putSkipped(String path, ObjectId id) {
+        entries.remove(path);
+        entries.put(path, new Entry(id, true, -1, -1));
+        dirty = true;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Whether entries or stat data changed since the index was read or written.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Path -> blob id for every entry, including skipped ones.
+     */
+    public Map<String, ObjectId> toState() {
+        Map<String, ObjectId> state = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            state.put(entry.getKey(), entry.getValue().id);
+        }
+        return state;
+    }
+}
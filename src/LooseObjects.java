@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams the files under .git/objects one fan-out directory at a time,
+ * without collecting the whole listing in memory.
+ */
+public class LooseObjects {
+
+    public interface Visitor {
+        /**
+         * Called for every file; hash is null when the file name is not an object id.
+         */
+        void visit(String hash, Path file) throws IOException, InterruptedException;
+    }
+
+    public static void forEach(ObjectStore store, Visitor visitor) throws IOException, InterruptedException {
+        Path objectsDir = store.getDirectory();
+        if (!Files.isDirectory(objectsDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> fanOut = Files.newDirectoryStream(objectsDir)) {
+            for (Path dir : fanOut) {
+                String prefix = dir.getFileName().toString();
+                if (!Files.isDirectory(dir) || prefix.length() != 2
+                        || !ObjectId.isValid(prefix + "0".repeat(38))) {
+                    continue;
+                }
+                try (DirectoryStream<Path> objects = Files.newDirectoryStream(dir)) {
+                    for (Path object : objects) {
+                        String hash = prefix + object.getFileName();
+                        visitor.visit(ObjectId.isValid(hash) ? hash : null, object);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -44,7 +44,14 @@ public class Main {
                 }
                 break;
             case "log":
-                GitCommands.log();
+                // log -- <path> lists only the commits that changed that path
+                if(args.length > 2 && args[1].equals("--")) {
+                    GitCommands.log(args[2]);
+                } else if(args.length > 1) {
+                    System.out.println("Usage: log [-- <path>]");
+                } else {
+                    GitCommands.log();
+                }
                 break;
             case "branch":
                 if(args.length < 2){
@@ -68,6 +75,54 @@ public class Main {
                     GitCommands.merge(args[1]);
                 }
                 break;
+            case "stash":
+                // A bare "stash" saves, as in git
+                GitCommands.stash(args.length > 1 ? args[1] : "push");
+                break;
+            case "bundle":
+                if(args.length < 3 || (args[1].equals("create") && args.length < 4)){
+                    System.out.println("Usage: bundle create <file> <branch>... [^<base> | <base>..<branch>]");
+                    System.out.println("       bundle unbundle <file>");
+                } else {
+                    GitCommands.bundle(args[1], Arrays.asList(args).subList(2, args.length));
+                }
+                break;
+            case "diff":
+                // -C also reports files copied from an unchanged path
+                GitCommands.diff(args.length > 1 && args[1].equals("-C"));
+                break;
+            case "fsck":
+                GitCommands.fsck();
+                break;
+            case "prune":
+                boolean dryRun = false;
+                long expireMillis = Prune.DEFAULT_EXPIRE_MILLIS;
+                try {
+                    for (int i = 1; i < args.length; i++) {
+                        if (args[i].equals("-n") || args[i].equals("--dry-run")) {
+                            dryRun = true;
+                        } else if (args[i].equals("--expire") && i + 1 < args.length) {
+                            expireMillis = Prune.parseExpire(args[++i]);
+                        } else {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Usage: prune [-n] [--expire <days>|now]");
+                    break;
+                }
+                GitCommands.prune(expireMillis, dryRun);
+                break;
+            case "count-objects":
+                GitCommands.countObjects(args.length > 1 && args[1].equals("-v"));
+                break;
+            case "sparse-checkout":
+                if(args.length < 2){
+                    System.out.println("Usage: sparse-checkout set <dir>... | list | disable");
+                } else {
+                    GitCommands.sparseCheckout(args[1], Arrays.asList(args).subList(2, args.length));
+                }
+                break;
             default:
                 System.out.println("Unknown command: " + command);
         }
@@ -0,0 +1,38 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link Repository#merge(String)}.
+ */
+public final class MergeResult {
+    public enum Status { FAST_FORWARD, MERGED }
+
+    private final Status status;
+    private final ObjectId commit;
+    private final List<String> conflicts;
+
+    MergeResult(Status status, ObjectId commit, List<String> conflicts) {
+        this.status = status;
+        this.commit = commit;
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * The commit the current branch now points at.
+     */
+    public ObjectId getCommit() {
+        return commit;
+    }
+
+    /**
+     * One message per conflicting path. On a conflict the current branch's
+     * version is kept.
+     */
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+}
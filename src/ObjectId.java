@@ -0,0 +1,89 @@
+import java.util.Objects;
+
+/**
+ * SHA-1 name of an object in the store, as 40 lowercase hex characters.
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+    private final String hex;
+
+    private ObjectId(String hex) {
+        this.hex = hex;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the string is not a full object id
+     */
+    public static ObjectId fromString(String hex) {
+        String normalized = hex.trim();
+        if (!isValid(normalized)) {
+            throw new IllegalArgumentException("Not an object id: '" + hex + "'");
+        }
+        return new ObjectId(normalized);
+    }
+
+    /**
+     * Reads the 20-byte binary form.
+     */
+    public static ObjectId fromBytes(byte[] raw) {
+        StringBuilder hex = new StringBuilder(40);
+        for (int i = 0; i < 20; i++) {
+            hex.append(Character.forDigit((raw[i] >> 4) & 0xF, 16)).append(Character.forDigit(raw[i] & 0xF, 16));
+        }
+        return new ObjectId(hex.toString());
+    }
+
+    public byte[] toBytes() {
+        byte[] raw = new byte[20];
+        for (int i = 0; i < 20; i++) {
+            raw[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return raw;
+    }
+
+    /**
+     * Whether hex is a full object id: 40 lowercase hex characters.
+     */
+    public static boolean isValid(String hex) {
+        if (hex.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i++) {
+            char c = hex.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String name() {
+        return hex;
+    }
+
+    /**
+     * First seven characters, for messages.
+     */
+    public String abbreviate() {
+        return hex.substring(0, 7);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        return hex.compareTo(other.hex);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ObjectId && hex.equals(((ObjectId) other).hex);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(hex);
+    }
+
+    @Override
+    public String toString() {
+        return hex;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Compact set of object ids for walks over very large repositories.
+ *
+ * Only the first 64 bits of each SHA-1 are kept, in an open-addressing
+ * table of longs that is at most half full: 16 to 32 bytes per id, against
+ * well over 100 bytes for a HashSet of hex strings. Two distinct objects sharing a
+ * 64-bit prefix is astronomically unlikely; callers that must never act on a
+ * false positive (e.g. deletion) only use a hit to keep an object, never to
+ * discard one.
+ */
+public class ObjectIdSet {
+    private static final long EMPTY = 0L;
+
+    private long[] table;
+    private int size;
+    private boolean containsZero;
+
+    public ObjectIdSet() {
+        this(1024);
+    }
+
+    public ObjectIdSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        table = new long[capacity];
+    }
+
+    public synchronized boolean add(String hash) {
+        long key = prefix(hash);
+        if (key == EMPTY) {
+            boolean added = !containsZero;
+            containsZero = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+        if ((size + 1) * 2 > table.length) {
+            grow();
+        }
+        boolean added = insert(table, key);
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    public synchronized boolean contains(String hash) {
+        long key = prefix(hash);
+        if (key == EMPTY) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = table[slot];
+            if (current == EMPTY) {
+                return false;
+            }
+            if (current == key) {
+                return true;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static boolean insert(long[] into, long key) {
+        int mask = into.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = into[slot];
+            if (current == EMPTY) {
+                into[slot] = key;
+                return true;
+            }
+            if (current == key) {
+                return false;
+            }
+        }
+    }
+
+    private void grow() {
+        long[] grown = new long[table.length * 2];
+        for (long key : table) {
+            if (key != EMPTY) {
+                insert(grown, key);
+            }
+        }
+        table = grown;
+    }
+
+    private static long prefix(String hash) {
+        return Long.parseUnsignedLong(hash.substring(0, 16), 16);
+    }
+
+    private static int mix(long key) {
+        // SHA-1 bits are already uniform; fold the halves together
+        return (int) (key ^ (key >>> 32));
+    }
+}
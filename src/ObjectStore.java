@@ -0,0 +1,355 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loose objects under .git/objects/xx/yyyy, with caches of parsed commits
+ * and trees.
+ *
+ * Objects are immutable and named by their content, so cached entries never
+ * go stale and the caches can be shared by any number of threads. Writes go
+ * through a temporary file and an atomic rename, so concurrent writers of the
+ * same object cannot leave a torn file behind.
+ *
+ * Callers that need many objects at once should use {@link #readAll}: ids are
+ * read in directory order on virtual threads, with a bounded number of reads
+ * and bytes in flight, so a cold cache or a network filesystem is kept busy instead of
+ * being waited on one object at a time.
+ */
+public class ObjectStore {
+    // Past this many entries a cache is dropped and refilled on demand
+    private static final int CACHE_LIMIT = 20_000;
+    // Reads in flight across all batches
+    private static final int MAX_CONCURRENT_READS = 64;
+    // Most objects of one fan-out directory read back to back by one thread
+    private static final int MAX_RUN = 32;
+    // Bytes of objects read but not yet consumed; a larger object waits for the whole budget
+    private static final int MAX_BYTES_IN_FLIGHT = 64 * 1024 * 1024;
+
+    private final Path objectsDir;
+    private ChunkStore chunkStore;
+    private final ConcurrentHashMap<ObjectId, Commit> commits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ObjectId, Tree> trees = new ConcurrentHashMap<>();
+    private final Semaphore readPermits = new Semaphore(MAX_CONCURRENT_READS);
+    private final Semaphore bytePermits = new Semaphore(MAX_BYTES_IN_FLIGHT);
+    private ExecutorService readers;
+
+    public ObjectStore(Path objectsDir) {
+        this.objectsDir = objectsDir;
+    }
+
+    public Path getDirectory() {
+        return objectsDir;
+    }
+
+    public synchronized ChunkStore getChunkStore() {
+        if (chunkStore == null) {
+            chunkStore = new ChunkStore(this);
+        }
+        return chunkStore;
+    }
+
+    public Path path(ObjectId id) {
+        String name = id.name();
+        return objectsDir.resolve(name.substring(0, 2)).resolve(name.substring(2));
+    }
+
+    public boolean has(ObjectId id) {
+        return Files.exists(path(id));
+    }
+
+    public byte[] read(ObjectId id) throws IOException {
+        return Files.readAllBytes(path(id));
+    }
+
+    public List<String> readLines(ObjectId id) throws IOException {
+        return Files.readAllLines(path(id));
+    }
+
+    public Commit readCommit(ObjectId id) throws IOException {
+        Commit commit = commits.get(id);
+        if (commit == null) {
+            commit = Commit.parse(id, readLines(id));
+            cache(commits, id, commit);
+        }
+        return commit;
+    }
+
+    public Tree readTree(ObjectId id) throws IOException {
+        Tree tree = trees.get(id);
+        if (tree == null) {
+            tree = Tree.parse(id, readLines(id));
+            cache(trees, id, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Commits for all ids, reading the ones not cached as one batch.
+     */
+    public Map<ObjectId, Commit> readCommits(Collection<ObjectId> ids) throws IOException {
+        return readParsed(ids, commits, Commit::parse);
+    }
+
+    /**
+     * Trees for all ids, reading the ones not cached as one batch.
+     */
+    public Map<ObjectId, Tree> readTrees(Collection<ObjectId> ids) throws IOException {
+        return readParsed(ids, trees, Tree::parse);
+    }
+
+    private interface Parser<T> {
+        T parse(ObjectId id, List<String> lines) throws IOException;
+    }
+
+    private <T> Map<ObjectId, T> readParsed(Collection<ObjectId> ids, ConcurrentHashMap<ObjectId, T> cache,
+                                            Parser<T> parser) throws IOException {
+        Map<ObjectId, T> parsed = new HashMap<>();
+        List<ObjectId> missing = new ArrayList<>();
+        for (ObjectId id : ids) {
+            T value = cache.get(id);
+            if (value != null) {
+                parsed.put(id, value);
+            } else {
+                missing.add(id);
+            }
+        }
+        for (Map.Entry<ObjectId, CompletableFuture<byte[]>> read : readAll(missing).entrySet()) {
+            String text = new String(await(read.getValue()), StandardCharsets.UTF_8);
+            T value = parser.parse(read.getKey(), text.lines().toList());
+            cache(cache, read.getKey(), value);
+            parsed.put(read.getKey(), value);
+        }
+        return parsed;
+    }
+
+    /**
+     * Starts reading every object in ids and returns one future per distinct id.
+     *
+     * Ids are sorted, which groups them by fan-out directory, and each run of
+     * up to MAX_RUN ids from one directory is read back to back by a single
+     * virtual thread. Futures complete in whatever order the reads finish,
+     * exceptionally with the IOException when an object cannot be read.
+     * Dependent actions attached to a future run while its read still holds
+     * its permits, so a caller that consumes objects as they arrive and does
+     * not keep the futures holds only a bounded number of objects in memory.
+     */
+    public Map<ObjectId, CompletableFuture<byte[]>> readAll(Collection<ObjectId> ids) {
+        Map<ObjectId, CompletableFuture<byte[]>> results = new LinkedHashMap<>();
+        List<ObjectId> run = new ArrayList<>();
+        for (ObjectId id : new TreeSet<>(ids)) {
+            if (!run.isEmpty() && (run.size() == MAX_RUN
+                    || !run.get(0).name().regionMatches(0, id.name(), 0, 2))) {
+                submit(run, results);
+                run = new ArrayList<>();
+            }
+            run.add(id);
+            results.put(id, new CompletableFuture<>());
+        }
+        if (!run.isEmpty()) {
+            submit(run, results);
+        }
+        return results;
+    }
+
+    private void submit(List<ObjectId> run, Map<ObjectId, CompletableFuture<byte[]>> results) {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(run.size());
+        run.forEach(id -> futures.add(results.get(id)));
+        readers().execute(() -> {
+            for (int i = 0; i < run.size(); i++) {
+                // Let go of each future before reading, so the run never keeps
+                // a completed object alive after its consumer is done with it
+                CompletableFuture<byte[]> future = futures.set(i, null);
+                try {
+                    readInto(run.get(i), future);
+                } catch (Throwable t) {
+                    // Never leave a caller waiting on a future that will not complete
+                    Throwable failure = t instanceof InterruptedException
+                            ? new IOException("Interrupted while reading objects", t) : t;
+                    future.completeExceptionally(failure);
+                    futures.subList(i + 1, futures.size()).forEach(rest -> rest.completeExceptionally(failure));
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads one object once a read slot and its share of the byte budget are
+     * free, and completes the future while still holding both.
+     */
+    private void readInto(ObjectId id, CompletableFuture<byte[]> future) throws InterruptedException {
+        int cost;
+        try {
+            cost = (int) Math.min(Files.size(path(id)), MAX_BYTES_IN_FLIGHT);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        readPermits.acquire();
+        try {
+            bytePermits.acquire(cost);
+            try {
+                byte[] content;
+                try {
+                    content = read(id);
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                future.complete(content);
+            } finally {
+                bytePermits.release(cost);
+            }
+        } finally {
+            readPermits.release();
+        }
+    }
+
+    private synchronized ExecutorService readers() {
+        if (readers == null) {
+            readers = Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return readers;
+    }
+
+    /**
+     * Waits for a future from this store, rethrowing the IOException that
+     * failed it; any other failure is reported as an IOException too.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            // e.g. OutOfMemoryError on a reader thread
+            throw new IOException(String.valueOf(e.getCause()), e.getCause());
+        }
+    }
+
+    private static <T> void cache(ConcurrentHashMap<ObjectId, T> cache, ObjectId id, T value) {
+        if (cache.size() >= CACHE_LIMIT) {
+            cache.clear();
+        }
+        cache.put(id, value);
+    }
+
+    /**
+     * Stores content under its hash and returns the id. An object that
+     * already exists is only freshened.
+     */
+    public ObjectId write(byte[] content) throws IOException {
+        ObjectId id = hash(content);
+        write(id, content);
+        return id;
+    }
+
+    /**
+     * Stores content under a given id, for objects whose id is not the hash of
+     * the stored bytes (chunk manifests).
+     */
+    void write(ObjectId id, byte[] content) throws IOException {
+        Path objectPath = path(id);
+        if (freshen(objectPath)) {
+            return;
+        }
+        Files.createDirectories(objectPath.getParent());
+        Path temp = Files.createTempFile(objectPath.getParent(), "obj", ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, objectPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Sets an existing object's modification time to now, so a prune running
+     * concurrently treats it as new until whatever reuses it is recorded;
+     * false when the object does not exist.
+     */
+    public boolean freshen(ObjectId id) throws IOException {
+        return freshen(path(id));
+    }
+
+    static boolean freshen(Path objectPath) throws IOException {
+        try {
+            Files.setLastModifiedTime(objectPath, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the content of a blob to target given its stored bytes (as
+     * returned by {@link #readAll}), reassembling chunked blobs on the executor.
+     */
+    public void copyBlobTo(ObjectId id, byte[] stored, Path target, ExecutorService executor) throws IOException {
+        if (ChunkStore.isManifest(id, stored)) {
+            getChunkStore().restore(path(id), target, executor);
+        } else {
+            Files.write(target, stored);
+        }
+    }
+
+    /**
+     * Drops the caches and stops the reader threads.
+     */
+    void close() {
+        synchronized (this) {
+            if (readers != null) {
+                readers.shutdownNow();
+                readers = null;
+            }
+        }
+        commits.clear();
+        trees.clear();
+    }
+
+    public static ObjectId hash(byte[] content) {
+        MessageDigest digest = sha1();
+        return ObjectId.fromString(ChunkStore.toHex(digest.digest(content)));
+    }
+
+    /**
+     * Same result as hash() on the file's bytes, without holding the whole file in memory.
+     */
+    public static ObjectId hashFile(Path path) throws IOException {
+        MessageDigest digest = sha1();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return ObjectId.fromString(ChunkStore.toHex(digest.digest()));
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
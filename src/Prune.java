@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Mark-and-sweep removal of unreachable loose objects, and size accounting
+ * for the object store.
+ *
+ * Reachability marks everything reachable from refs, HEAD and the index;
+ * the sweep then deletes unmarked objects last modified before the grace
+ * period. The grace period protects blobs written by an add whose index
+ * update has not landed yet; writing an object that already exists resets
+ * its modification time, so old objects being reused are protected too.
+ */
+public class Prune {
+    public static final long DEFAULT_EXPIRE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+    private final Path gitDir;
+    private final ObjectStore objects;
+    private final Consumer<String> out;
+
+    public Prune(Path gitDir, ObjectStore objects, Consumer<String> out) {
+        this.gitDir = gitDir;
+        this.objects = objects;
+        this.out = out;
+    }
+
+    /**
+     * Deletes unreachable objects older than expireMillis. Nothing is deleted
+     * when the walk finds a missing object, since the marks may be incomplete.
+     */
+    public void prune(long expireMillis, boolean dryRun) throws IOException {
+        List<String> missing = new ArrayList<>();
+        Reachability reachability = new Reachability(gitDir, objects,
+                (type, hash, referencedBy) -> missing.add(type + " " + hash));
+        reachability.markFromRoots();
+        if (!missing.isEmpty()) {
+            out.accept("Error: repository has missing objects (" + missing.get(0)
+                    + (missing.size() > 1 ? " and " + (missing.size() - 1) + " more" : "")
+                    + "); run fsck. Nothing was pruned.");
+            return;
+        }
+
+        FileTime cutoff = FileTime.fromMillis(System.currentTimeMillis() - expireMillis);
+        long[] removed = new long[2]; // count, bytes
+        Set<Path> touchedDirs = new HashSet<>();
+        forEach((hash, object) -> {
+            // Objects marked reachable are always kept; garbage files (e.g. an
+            // interrupted chunk write) are swept like unreachable objects
+            if (hash != null && reachability.isReachable(hash)) {
+                return;
+            }
+            if (Files.getLastModifiedTime(object).compareTo(cutoff) >= 0) {
+                return;
+            }
+            long size = Files.size(object);
+            out.accept((dryRun ? "Would remove " : "Removing ")
+                    + (hash != null ? hash + " (" + Fsck.sniffType(object) + ")" : gitDir.relativize(object).toString()));
+            if (!dryRun) {
+                Files.delete(object);
+                touchedDirs.add(object.getParent());
+            }
+            removed[0]++;
+            removed[1] += size;
+        });
+
+        for (Path dir : touchedDirs) {
+            try (var entries = Files.list(dir)) {
+                if (entries.findAny().isEmpty()) {
+                    Files.delete(dir);
+                }
+            }
+        }
+        out.accept((dryRun ? "Would prune " : "Pruned ") + removed[0] + " object(s), "
+                + formatKiB(removed[1]) + ".");
+    }
+
+    /**
+     * Reports the number of loose objects and their disk usage; verbose adds a
+     * breakdown by type, which needs a reachability walk.
+     */
+    public void countObjects(boolean verbose) throws IOException {
+        Reachability reachability = null;
+        if (verbose) {
+            reachability = new Reachability(gitDir, objects, (type, hash, referencedBy) -> { });
+            reachability.markFromRoots();
+        }
+        Reachability marks = reachability;
+
+        Map<String, long[]> byType = new LinkedHashMap<>();
+        for (String label : new String[]{"commits", "trees", "blobs", "chunks", "unreachable"}) {
+            byType.put(label, new long[2]);
+        }
+        long[] total = new long[2];
+        long[] garbage = new long[2];
+        forEach((hash, object) -> {
+            long size = Files.size(object);
+            if (hash == null) {
+                garbage[0]++;
+                garbage[1] += size;
+                return;
+            }
+            total[0]++;
+            total[1] += size;
+            if (marks != null) {
+                String type = marks.typeOf(hash);
+                long[] counts = byType.get(type == null ? "unreachable" : type + "s");
+                counts[0]++;
+                counts[1] += size;
+            }
+        });
+
+        if (!verbose) {
+            out.accept(total[0] + " objects, " + total[1] / 1024 + " kilobytes");
+            return;
+        }
+        out.accept("count: " + total[0]);
+        out.accept("size: " + total[1] / 1024);
+        for (Map.Entry<String, long[]> entry : byType.entrySet()) {
+            out.accept(entry.getKey() + ": " + entry.getValue()[0]
+                    + " (" + entry.getValue()[1] / 1024 + " KiB)");
+        }
+        out.accept("garbage: " + garbage[0]);
+        out.accept("size-garbage: " + garbage[1] / 1024);
+    }
+
+    private void forEach(LooseObjects.Visitor visitor) throws IOException {
+        try {
+            LooseObjects.forEach(objects, visitor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning objects", e);
+        }
+    }
+
+    private static String formatKiB(long bytes) {
+        return bytes / 1024 + " KiB";
+    }
+
+    /**
+     * Parses an expiry given in days, or "now" to prune regardless of age.
+     */
+    public static long parseExpire(String value) {
+        if (value.equals("now")) {
+            return 0;
+        }
+        return Long.parseLong(value) * 24 * 60 * 60 * 1000;
+    }
+}
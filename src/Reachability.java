@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Marks every object reachable from refs, HEAD and the index.
+ *
+ * Objects carry no type header, so the type of each object is whatever the
+ * walk reached it as: commits through refs and parent lines, trees through
+ * commits, blobs through trees and the index, chunks through the manifest of
+ * a chunked blob. The walk is iterative, so long histories do not grow the
+ * call stack.
+ */
+public class Reachability {
+
+    public interface Listener {
+        void missing(String type, String hash, String referencedBy);
+
+        /**
+         * Called once for each object the walk marks and finds on disk.
+         */
+        default void reached(String type, String hash) throws IOException {
+        }
+    }
+
+    public final ObjectIdSet commits = new ObjectIdSet();
+    public final ObjectIdSet trees = new ObjectIdSet();
+    public final ObjectIdSet blobs = new ObjectIdSet();
+    public final ObjectIdSet chunks = new ObjectIdSet();
+
+    private final Path gitDir;
+    private final ObjectStore objects;
+    private final Listener listener;
+    private Reachability boundary;
+    private ObjectIdSet expand;
+    private final Set<String> boundaryCommits = new LinkedHashSet<>();
+
+    /**
+     * Walks the refs, HEAD and index under gitDir; objects are looked up in the store.
+     */
+    public Reachability(Path gitDir, ObjectStore objects, Listener listener) {
+        this.gitDir = gitDir;
+        this.objects = objects;
+        this.listener = listener;
+    }
+
+    /**
+     * Makes later walks stop at anything the other walk marked, as when
+     * listing the objects an incremental bundle must carry. Commits a walk
+     * stops at are collected in {@link #getBoundaryCommits()}.
+     */
+    public void stopAt(Reachability other) {
+        this.boundary = other;
+    }
+
+    /**
+     * Makes later walks read only the objects in ids. Any other object is
+     * checked to exist and then trusted to be complete, as when checking
+     * just the objects an unbundle added.
+     */
+    public void expandOnly(ObjectIdSet ids) {
+        this.expand = ids;
+    }
+
+    public Set<String> getBoundaryCommits() {
+        return boundaryCommits;
+    }
+
+    public void markFromRoots() throws IOException {
+        for (Map.Entry<String, String> root : readRoots(gitDir).entrySet()) {
+            markCommit(root.getValue(), root.getKey());
+        }
+        for (Index.Entry entry : Index.read(gitDir.resolve("index")).getEntries().values()) {
+            markBlob(entry.id.name(), "index");
+        }
+    }
+
+    public boolean isReachable(String hash) {
+        return commits.contains(hash) || trees.contains(hash) || blobs.contains(hash) || chunks.contains(hash);
+    }
+
+    /**
+     * Type the walk reached this object as, or null if it is unreachable.
+     */
+    public String typeOf(String hash) {
+        if (commits.contains(hash)) {
+            return "commit";
+        } else if (trees.contains(hash)) {
+            return "tree";
+        } else if (blobs.contains(hash)) {
+            return "blob";
+        } else if (chunks.contains(hash)) {
+            return "chunk";
+        }
+        return null;
+    }
+
+    public void markCommit(String start, String referencedBy) throws IOException {
+        Deque<String[]> pending = new ArrayDeque<>();
+        pending.push(new String[]{start, referencedBy});
+        while (!pending.isEmpty()) {
+            String[] next = pending.pop();
+            String hash = next[0];
+            if (boundary != null && boundary.commits.contains(hash)) {
+                boundaryCommits.add(hash);
+                continue;
+            }
+            if (!ObjectId.isValid(hash) || !commits.add(hash)) {
+                continue;
+            }
+            Path commitPath = objectPath(hash);
+            if (!Files.exists(commitPath)) {
+                listener.missing("commit", hash, next[1]);
+                continue;
+            }
+            listener.reached("commit", hash);
+            if (!expands(hash)) {
+                continue;
+            }
+            for (String line : Files.readAllLines(commitPath)) {
+                if (line.startsWith("tree ")) {
+                    markTree(line.substring(5).trim(), "commit " + hash);
+                } else if (line.startsWith("parent ")) {
+                    String parent = line.substring(7).trim();
+                    if (!commits.contains(parent)) {
+                        pending.push(new String[]{parent, "commit " + hash});
+                    }
+                }
+            }
+        }
+    }
+
+    private void markTree(String hash, String referencedBy) throws IOException {
+        if (!ObjectId.isValid(hash) || (boundary != null && boundary.trees.contains(hash)) || !trees.add(hash)) {
+            return;
+        }
+        Path treePath = objectPath(hash);
+        if (!Files.exists(treePath)) {
+            listener.missing("tree", hash, referencedBy);
+            return;
+        }
+        listener.reached("tree", hash);
+        if (!expands(hash)) {
+            return;
+        }
+        for (String line : Files.readAllLines(treePath)) {
+            String[] parts = line.split(" ", 2);
+            if (parts.length == 2) {
+                markBlob(parts[0], "tree " + hash);
+            }
+        }
+    }
+
+    private void markBlob(String hash, String referencedBy) throws IOException {
+        if (!ObjectId.isValid(hash) || (boundary != null && boundary.blobs.contains(hash)) || !blobs.add(hash)) {
+            return;
+        }
+        Path blobPath = objectPath(hash);
+        if (!Files.exists(blobPath)) {
+            listener.missing("blob", hash, referencedBy);
+            return;
+        }
+        listener.reached("blob", hash);
+        if (expands(hash) && ChunkStore.isManifest(ObjectId.fromString(hash), blobPath)) {
+            for (String chunk : ChunkStore.readManifest(blobPath).keySet()) {
+                if ((boundary != null && boundary.chunks.contains(chunk)) || !chunks.add(chunk)) {
+                    continue;
+                }
+                if (!ObjectId.isValid(chunk) || !Files.exists(objectPath(chunk))) {
+                    listener.missing("chunk", chunk, "blob " + hash);
+                } else {
+                    listener.reached("chunk", chunk);
+                }
+            }
+        }
+    }
+
+    private boolean expands(String hash) {
+        return expand == null || expand.contains(hash);
+    }
+
+    private Path objectPath(String hash) {
+        return objects.path(ObjectId.fromString(hash));
+    }
+
+    /**
+     * Returns ref name -> commit for every ref under .git/refs, plus HEAD when
+     * it is detached. A ref file may list several commits, one per line.
+     */
+    public static Map<String, String> readRoots(Path gitDir) throws IOException {
+        Map<String, String> roots = new TreeMap<>();
+        Path refsDir = gitDir.resolve("refs");
+        if (Files.isDirectory(refsDir)) {
+            List<Path> refFiles;
+            try (Stream<Path> walk = Files.walk(refsDir)) {
+                refFiles = walk.filter(Files::isRegularFile).sorted().toList();
+            }
+            for (Path refFile : refFiles) {
+                String name = gitDir.relativize(refFile).toString().replace('\\', '/');
+                List<String> lines = Files.readAllLines(refFile);
+                for (int i = 0; i < lines.size(); i++) {
+                    String hash = lines.get(i).trim();
+                    if (ObjectId.isValid(hash)) {
+                        roots.put(i == 0 ? name : name + "@{" + i + "}", hash);
+                    }
+                }
+            }
+        }
+        Path headPath = gitDir.resolve("HEAD");
+        if (Files.exists(headPath)) {
+            String head = Files.readString(headPath).trim();
+            if (ObjectId.isValid(head)) {
+                roots.put("HEAD", head);
+            }
+        }
+        return roots;
+    }
+}
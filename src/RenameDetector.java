@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Pairs deleted paths with added paths that hold the same or similar content.
+ *
+ * Exact matches (identical blob ids) are paired first. The remaining files are
+ * split into content-defined chunks with a rolling gear hash and compared
+ * through an inverted index from chunk fingerprint to source file, so each
+ * added file is only scored against sources it actually shares chunks with.
+ */
+public class RenameDetector {
+
+    /**
+     * Returns chunk fingerprint -> bytes covered for a blob, see {@link #fingerprint(byte[])}.
+     */
+    public interface Fingerprinter {
+        Map<Long, Integer> fingerprint(String hash) throws IOException;
+    }
+
+    public static class Match {
+        public final String source;
+        public final String target;
+        public final int score;
+        public final boolean copy;
+
+        Match(String source, String target, int score, boolean copy) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
+            this.copy = copy;
+        }
+    }
+
+    // Chunk size bounds for the similarity fingerprints (average ~64 bytes).
+    private static final int MIN_CHUNK = 16;
+    private static final int MAX_CHUNK = 256;
+    private static final long CHUNK_MASK = 0x3FL;
+
+    // Chunks shared by more sources than this are boilerplate (blank lines,
+    // license headers) and are left out of the index to keep pairing linear.
+    private static final int MAX_POSTINGS = 64;
+
+    private static final long[] GEAR = new long[256];
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final Fingerprinter fingerprinter;
+    private final int threshold;
+    private final boolean findCopies;
+
+    /**
+     * @param threshold  minimum similarity score (0-100) for an inexact pairing
+     * @param findCopies also match added files against the unchanged files passed to {@link #detect}
+     */
+    public RenameDetector(Fingerprinter fingerprinter, int threshold, boolean findCopies) {
+        this.fingerprinter = fingerprinter;
+        this.threshold = Math.max(0, Math.min(100, threshold));
+        this.findCopies = findCopies;
+    }
+
+    /**
+     * Every map is path -> blob hash. Each deleted path is used for at most one
+     * rename; unchanged paths are only consulted when copy detection is enabled
+     * and may be the source of any number of copies.
+     */
+    public List<Match> detect(Map<String, String> deleted, Map<String, String> added,
+                              Map<String, String> unchanged) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        Set<String> usedSources = new HashSet<>();
+        Set<String> matchedTargets = new HashSet<>();
+
+        // Exact renames first, by blob id
+        Map<String, Deque<String>> deletedByHash = new HashMap<>();
+        for (String path : new TreeSet<>(deleted.keySet())) {
+            deletedByHash.computeIfAbsent(deleted.get(path), h -> new ArrayDeque<>()).add(path);
+        }
+        Map<String, String> unchangedByHash = new HashMap<>();
+        if (findCopies) {
+            for (String path : new TreeSet<>(unchanged.keySet())) {
+                unchangedByHash.putIfAbsent(unchanged.get(path), path);
+            }
+        }
+        for (String path : new TreeSet<>(added.keySet())) {
+            String hash = added.get(path);
+            Deque<String> candidates = deletedByHash.get(hash);
+            if (candidates != null && !candidates.isEmpty()) {
+                String source = candidates.poll();
+                usedSources.add(source);
+                matchedTargets.add(path);
+                matches.add(new Match(source, path, 100, false));
+            } else if (unchangedByHash.containsKey(hash)) {
+                matchedTargets.add(path);
+                matches.add(new Match(unchangedByHash.get(hash), path, 100, true));
+            }
+        }
+
+        // Inexact pairing over what is left
+        List<String> sources = new ArrayList<>();
+        List<Boolean> sourceIsCopy = new ArrayList<>();
+        for (String path : new TreeSet<>(deleted.keySet())) {
+            if (!usedSources.contains(path)) {
+                sources.add(path);
+                sourceIsCopy.add(false);
+            }
+        }
+        if (findCopies) {
+            for (String path : new TreeSet<>(unchanged.keySet())) {
+                sources.add(path);
+                sourceIsCopy.add(true);
+            }
+        }
+        List<String> targets = new ArrayList<>();
+        for (String path : new TreeSet<>(added.keySet())) {
+            if (!matchedTargets.contains(path)) {
+                targets.add(path);
+            }
+        }
+        if (sources.isEmpty() || targets.isEmpty()) {
+            return matches;
+        }
+
+        List<Map<Long, Integer>> sourcePrints = new ArrayList<>();
+        long[] sourceSizes = new long[sources.size()];
+        Map<Long, List<Integer>> postings = new HashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            String path = sources.get(i);
+            String hash = sourceIsCopy.get(i) ? unchanged.get(path) : deleted.get(path);
+            Map<Long, Integer> print = fingerprinter.fingerprint(hash);
+            sourcePrints.add(print);
+            sourceSizes[i] = sizeOf(print);
+            for (Long chunk : print.keySet()) {
+                postings.computeIfAbsent(chunk, c -> new ArrayList<>()).add(i);
+            }
+        }
+        postings.values().removeIf(list -> list.size() > MAX_POSTINGS);
+
+        List<long[]> candidates = new ArrayList<>(); // {score, sourceIndex, targetIndex}
+        for (int t = 0; t < targets.size(); t++) {
+            Map<Long, Integer> print = fingerprinter.fingerprint(added.get(targets.get(t)));
+            long targetSize = sizeOf(print);
+            if (targetSize == 0) {
+                continue;
+            }
+            Map<Integer, Long> common = new HashMap<>();
+            for (Map.Entry<Long, Integer> chunk : print.entrySet()) {
+                List<Integer> holders = postings.get(chunk.getKey());
+                if (holders == null) {
+                    continue;
+                }
+                for (int s : holders) {
+                    int shared = Math.min(chunk.getValue(), sourcePrints.get(s).get(chunk.getKey()));
+                    common.merge(s, (long) shared, Long::sum);
+                }
+            }
+            for (Map.Entry<Integer, Long> entry : common.entrySet()) {
+                long larger = Math.max(sourceSizes[entry.getKey()], targetSize);
+                int score = (int) (entry.getValue() * 100 / larger);
+                if (score >= threshold) {
+                    candidates.add(new long[]{score, entry.getKey(), t});
+                }
+            }
+        }
+
+        // Best scores win; on a tie a rename beats a copy
+        candidates.sort((a, b) -> {
+            if (a[0] != b[0]) {
+                return Long.compare(b[0], a[0]);
+            }
+            return Boolean.compare(sourceIsCopy.get((int) a[1]), sourceIsCopy.get((int) b[1]));
+        });
+        for (long[] candidate : candidates) {
+            int s = (int) candidate[1];
+            String source = sources.get(s);
+            String target = targets.get((int) candidate[2]);
+            boolean copy = sourceIsCopy.get(s);
+            if (matchedTargets.contains(target) || (!copy && usedSources.contains(source))) {
+                continue;
+            }
+            if (!copy) {
+                usedSources.add(source);
+            }
+            matchedTargets.add(target);
+            matches.add(new Match(source, target, (int) candidate[0], copy));
+        }
+        return matches;
+    }
+
+    /**
+     * Splits content at rolling-hash boundaries and returns chunk fingerprint -> bytes covered.
+     */
+    public static Map<Long, Integer> fingerprint(byte[] content) {
+        Map<Long, Integer> print = new HashMap<>();
+        int start = 0;
+        long rolling = 0;
+        for (int i = 0; i < content.length; i++) {
+            rolling = (rolling << 1) + GEAR[content[i] & 0xFF];
+            int length = i - start + 1;
+            if ((length >= MIN_CHUNK && (rolling & CHUNK_MASK) == 0) || length >= MAX_CHUNK) {
+                print.merge(chunkHash(content, start, i + 1), length, Integer::sum);
+                start = i + 1;
+                rolling = 0;
+            }
+        }
+        if (start < content.length) {
+            print.merge(chunkHash(content, start, content.length), content.length - start, Integer::sum);
+        }
+        return print;
+    }
+
+    private static long sizeOf(Map<Long, Integer> print) {
+        long size = 0;
+        for (int bytes : print.values()) {
+            size += bytes;
+        }
+        return size;
+    }
+
+    private static long chunkHash(byte[] content, int from, int to) {
+        // FNV-1a, 64 bit
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            hash ^= content[i] & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
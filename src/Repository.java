@@ -0,0 +1,1552 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A repository opened on an explicit working directory.
+ *
+ * Every operation resolves paths against that directory, returns its result
+ * instead of printing it, and reports refusals as {@link RepositoryException}.
+ * One instance may be used from many threads: commands that change refs, the
+ * index or the working directory hold a write lock, read-only ones share a
+ * read lock, and parsed commits and trees are cached in the {@link ObjectStore}.
+ * Refs are replaced atomically, so other instances and processes never see
+ * one half-written, and a second concurrent index write fails rather than
+ * overwriting the first. Close the repository to release its worker threads.
+ */
+public class Repository implements AutoCloseable {
+    private static final int DEFAULT_RENAME_THRESHOLD = 50;
+    private static final String HEAD_REF_PREFIX = "ref: refs/heads/";
+    // Blobs read for a checkout but not yet written to the working directory
+    private static final int CHECKOUT_WINDOW = 256;
+    private static final int CHECKOUT_BATCH = 64;
+
+    private final Path workTree;
+    private final Path gitDir;
+    private final ObjectStore objects;
+    private final ChangedPathIndex changedPaths;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ExecutorService executor;
+    private volatile boolean closed;
+
+    private Repository(Path workTree) {
+        this.workTree = workTree;
+        this.gitDir = workTree.resolve(".git");
+        this.objects = new ObjectStore(gitDir.resolve("objects"));
+        this.changedPaths = new ChangedPathIndex(gitDir.resolve("objects"));
+    }
+
+    /**
+     * Opens the repository whose .git directory is inside workTree.
+     */
+    public static Repository open(Path workTree) throws RepositoryException {
+        Path root = workTree.toAbsolutePath().normalize();
+        if (!Files.isDirectory(root.resolve(".git"))) {
+            throw new RepositoryException("Error: Not a Git repository. Run 'init' first.");
+        }
+        return new Repository(root);
+    }
+
+    /**
+     * Creates .git with a main branch and opens it.
+     */
+    public static Repository init(Path workTree) throws IOException, RepositoryException {
+        Path root = workTree.toAbsolutePath().normalize();
+        Path gitDir = root.resolve(".git");
+        if (Files.exists(gitDir)) {
+            throw new RepositoryException("A Git repository already exists here.");
+        }
+        Files.createDirectory(gitDir);
+        for (String name : new String[]{"HEAD", "config", "description", "index"}) {
+            Files.createFile(gitDir.resolve(name));
+        }
+        Files.createDirectories(gitDir.resolve("refs").resolve("heads"));
+        Files.writeString(gitDir.resolve("refs").resolve("heads").resolve("main"), "");
+        Files.writeString(gitDir.resolve("HEAD"), HEAD_REF_PREFIX + "main");
+        return new Repository(root);
+    }
+
+    public Path getWorkTree() {
+        return workTree;
+    }
+
+    public Path getGitDir() {
+        return gitDir;
+    }
+
+    public ObjectStore getObjectStore() {
+        return objects;
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            objects.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Repository " + workTree + " is closed");
+        }
+    }
+
+    /**
+     * Worker threads for parallel chunk reads, created on first use.
+     */
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "repository-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    // ---- refs ----
+
+    /**
+     * Name of the checked-out branch, or "HEAD detached".
+     */
+    public String getCurrentBranch() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            String headContent = Files.readString(gitDir.resolve("HEAD")).trim();
+            if (headContent.startsWith(HEAD_REF_PREFIX)) {
+                return headContent.substring(HEAD_REF_PREFIX.length());
+            }
+            return "HEAD detached";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Commit HEAD points at, or null before the first commit.
+     */
+    public ObjectId resolveHead() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Path headPath = gitDir.resolve("HEAD");
+            if (!Files.exists(headPath)) {
+                return null;
+            }
+            String headContent = Files.readString(headPath).trim();
+            if (headContent.startsWith("ref: ")) {
+                return readRef(gitDir.resolve(headContent.substring(5)));
+            }
+            return ObjectId.isValid(headContent) ? ObjectId.fromString(headContent) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Commit a branch points at, or null if it has none yet.
+     */
+    public ObjectId resolveBranch(String branchName) throws IOException, RepositoryException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Path branchPath = branchPath(branchName);
+            if (!Files.exists(branchPath)) {
+                throw new RepositoryException("Error: Branch '" + branchName + "' does not exist.");
+            }
+            return readRef(branchPath);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> listBranches() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Path headsDir = gitDir.resolve("refs").resolve("heads");
+            if (!Files.isDirectory(headsDir)) {
+                return new ArrayList<>();
+            }
+            try (Stream<Path> branches = Files.list(headsDir)) {
+                return branches.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Path branchPath(String branchName) {
+        return gitDir.resolve("refs").resolve("heads").resolve(branchName);
+    }
+
+    private static ObjectId readRef(Path refPath) throws IOException {
+        if (!Files.exists(refPath)) {
+            return null;
+        }
+        String content = Files.readString(refPath).trim();
+        return ObjectId.isValid(content) ? ObjectId.fromString(content) : null;
+    }
+
+    /**
+     * Moves the current branch, or HEAD itself when detached.
+     */
+    private void updateHead(ObjectId commit) throws IOException {
+        String headContent = Files.readString(gitDir.resolve("HEAD")).trim();
+        if (headContent.startsWith(HEAD_REF_PREFIX)) {
+            writeRef(branchPath(headContent.substring(HEAD_REF_PREFIX.length())), commit.name());
+        } else {
+            writeRef(gitDir.resolve("HEAD"), commit.name());
+        }
+    }
+
+    /**
+     * Replaces a ref file (HEAD, a branch, the stash list) through a
+     * temporary file, so a concurrent reader never sees it empty or partial.
+     */
+    private void writeRef(Path refPath, String content) throws IOException {
+        Files.createDirectories(refPath.getParent());
+        // Kept out of refs/heads so it is never listed as a branch
+        Path temp = Files.createTempFile(gitDir, "ref", ".tmp");
+        try {
+            Files.writeString(temp, content);
+            Files.move(temp, refPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ---- branches and checkout ----
+
+    /**
+     * Creates a branch at the current commit and returns that commit (null
+     * before the first commit).
+     */
+    public ObjectId createBranch(String branchName) throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Path branchPath = branchPath(branchName);
+            if (Files.exists(branchPath)) {
+                throw new RepositoryException("Branch '" + branchName + "' already exists.");
+            }
+
+            // Create branch at the current HEAD commit, preserving existing history
+            ObjectId head = resolveHead();
+            writeRef(branchPath, head == null ? "" : head.name());
+            return head;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void checkout(String branchName) throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            ObjectId commit = resolveBranch(branchName);
+            if (hasUncommittedChanges()) {
+                throw new RepositoryException("Error: You have uncommitted changes.");
+            }
+            if (commit != null) {
+                checkoutCommit(commit);
+            }
+            writeRef(gitDir.resolve("HEAD"), HEAD_REF_PREFIX + branchName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the working directory and index from HEAD's tree to the commit's
+     * tree; call it before moving HEAD.
+     */
+    private void checkoutCommit(ObjectId commitId) throws IOException, RepositoryException {
+        ObjectId head = resolveHead();
+        Map<String, ObjectId> base = head == null ? new HashMap<>() : getCommitState(head);
+        Map<String, ObjectId> state = getCommitState(commitId);
+        switchTo(base, state, state);
+    }
+
+    /**
+     * Incremental checkout: brings the working directory to worktreeState
+     * and the index to indexState, where both were derived from baseState.
+     * Paths the switch leaves unchanged keep their index entry and file as
+     * they are, so staged and local changes to them are carried over. Of
+     * the rest, only files whose blob changes are written, tracked files the
+     * target drops are deleted, and entries outside the sparse-checkout cone
+     * are kept in the index, flagged, and never touched on disk. Index
+     * entries whose file matches their stat data are not read.
+     *
+     * Nothing is touched if a path that changes has an index entry other
+     * than its base one, or a file that matches neither its index entry nor
+     * its target. A null baseState discards local changes instead. Nor is
+     * anything touched if a target path leaves the working directory or
+     * points into .git.
+     *
+     * @throws RepositoryException if local changes would be overwritten or a path is unsafe
+     */
+    private void switchTo(Map<String, ObjectId> baseState, Map<String, ObjectId> worktreeState,
+                          Map<String, ObjectId> indexState) throws IOException, RepositoryException {
+        SparseCheckout sparse = SparseCheckout.load(gitDir);
+        Index current = readIndex();
+
+        Set<String> paths = new LinkedHashSet<>(indexState.keySet());
+        paths.addAll(worktreeState.keySet());
+        for (String filePath : paths) {
+            if (!Tree.isSafePath(filePath)) {
+                throw new RepositoryException("Error: Refusing to check out unsafe path '" + filePath + "'.");
+            }
+        }
+        paths.addAll(current.getEntries().keySet());
+        Set<String> carried = new HashSet<>();
+        List<String> overwritten = new ArrayList<>();
+        Map<ObjectId, List<Path>> targets = new HashMap<>();
+        List<Path> deletions = new ArrayList<>();
+        for (String filePath : paths) {
+            boolean inCone = sparse == null || sparse.includes(filePath);
+            Index.Entry existing = current.get(filePath);
+            ObjectId blob = worktreeState.get(filePath);
+            if (baseState != null && Objects.equals(baseState.get(filePath), blob)
+                    && Objects.equals(baseState.get(filePath), indexState.get(filePath))
+                    && (existing == null || existing.skipWorktree != inCone)) {
+                carried.add(filePath);
+                continue;
+            }
+            ObjectId staged = existing == null ? null : existing.id;
+            if (baseState != null && !Objects.equals(staged, baseState.get(filePath))
+                    && !Objects.equals(staged, indexState.get(filePath))) {
+                overwritten.add(filePath);
+                continue;
+            }
+            if (!inCone) {
+                continue;
+            }
+            Path target = workTree.resolve(filePath);
+            boolean upToDate = current.isUpToDate(filePath, target);
+            if (blob == null ? existing == null || existing.skipWorktree
+                    : existing != null && existing.id.equals(blob) && upToDate) {
+                continue;
+            }
+            if (baseState != null && !upToDate && Files.isRegularFile(target)) {
+                ObjectId hash = ObjectStore.hashFile(target);
+                if (!hash.equals(staged) && !hash.equals(blob)) {
+                    overwritten.add(filePath);
+                    continue;
+                }
+            }
+            if (blob == null) {
+                deletions.add(target);
+            } else {
+                targets.computeIfAbsent(blob, id -> new ArrayList<>()).add(target);
+            }
+        }
+        if (!overwritten.isEmpty()) {
+            throw new RepositoryException("Error: Your local changes to these files would be overwritten:\n"
+                    + String.join("\n", overwritten));
+        }
+        for (Path target : deletions) {
+            Files.deleteIfExists(target);
+        }
+        for (List<Path> files : targets.values()) {
+            for (Path target : files) {
+                Files.createDirectories(target.getParent());
+            }
+        }
+        writeBlobs(targets);
+
+        // The index now describes the checked-out state, plus what was carried over
+        Index index = new Index();
+        for (String filePath : paths) {
+            Index.Entry existing = current.get(filePath);
+            ObjectId blob = indexState.get(filePath);
+            Path file = workTree.resolve(filePath);
+            if (carried.contains(filePath)) {
+                if (existing != null) {
+                    index.put(filePath, existing);
+                }
+            } else if (blob == null) {
+                continue;
+            } else if (sparse != null && !sparse.includes(filePath)) {
+                index.putSkipped(filePath, blob);
+            } else if (blob.equals(worktreeState.get(filePath)) && Files.isRegularFile(file)) {
+                index.put(filePath, blob, file);
+            } else {
+                index.put(filePath, blob);
+            }
+        }
+        index.write(gitDir.resolve("index"));
+    }
+
+    /**
+     * Writes each blob to its target files, reading the blobs in batches and
+     * writing each as soon as it arrives. A bounded window of blobs read but
+     * not yet written keeps memory flat however large the checkout is.
+     */
+    private void writeBlobs(Map<ObjectId, List<Path>> targets) throws IOException {
+        List<ObjectId> blobs = new ArrayList<>(targets.keySet());
+        Semaphore window = new Semaphore(CHECKOUT_WINDOW);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        try {
+            for (int start = 0; start < blobs.size() && !failed.get(); start += CHECKOUT_BATCH) {
+                List<ObjectId> batch = blobs.subList(start, Math.min(blobs.size(), start + CHECKOUT_BATCH));
+                window.acquire(batch.size());
+                for (Map.Entry<ObjectId, CompletableFuture<byte[]>> read : objects.readAll(batch).entrySet()) {
+                    ObjectId blob = read.getKey();
+                    writes.add(read.getValue().thenAccept(stored -> {
+                        try {
+                            for (Path target : targets.get(blob)) {
+                                objects.copyBlobTo(blob, stored, target, executor());
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }).whenComplete((done, error) -> {
+                        if (error != null) {
+                            failed.set(true);
+                        }
+                        window.release();
+                    }));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing files", e);
+        }
+        ObjectStore.await(CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])));
+    }
+
+    /**
+     * True when a tracked file in the cone differs from its index entry.
+     */
+    public boolean hasUncommittedChanges() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Index index = readIndex();
+            for (Map.Entry<String, Index.Entry> entry : index.getEntries().entrySet()) {
+                if (entry.getValue().skipWorktree) {
+                    // Outside the sparse cone, not in the working directory
+                    continue;
+                }
+                Path file = workTree.resolve(entry.getKey());
+                if (Files.exists(file) && !index.isUpToDate(entry.getKey(), file)
+                        && !ObjectStore.hashFile(file).equals(entry.getValue().id)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- staging and committing ----
+
+    private Index readIndex() throws IOException {
+        return Index.read(gitDir.resolve("index"));
+    }
+
+    /**
+     * Stages one file, given relative to the working directory. Returns the
+     * blob id, or null when the file is already staged with this content.
+     * A tracked file that no longer exists is unstaged, so the next commit
+     * drops it; the blob id it had is returned.
+     */
+    public ObjectId add(String filePath) throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Path file = workTree.resolve(filePath);
+            Index index = readIndex();
+            if (!Files.exists(file)) {
+                Index.Entry removed = unstageMissing(index, filePath);
+                if (removed == null) {
+                    removed = unstageMissing(index, "./" + filePath);
+                }
+                if (removed == null) {
+                    throw new RepositoryException("File not found: " + filePath);
+                }
+                index.write(gitDir.resolve("index"));
+                return removed.id;
+            }
+            ObjectId id = stage(index, filePath, file);
+            if (index.isDirty()) {
+                index.write(gitDir.resolve("index"));
+            }
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stages every changed file under the working directory, skipping
+     * directories outside the sparse-checkout cone without listing them,
+     * and unstages tracked files that no longer exist. Returns the paths
+     * that were staged or unstaged.
+     */
+    public List<String> addAll() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Index index = readIndex();
+            List<String> staged = new ArrayList<>();
+            addDirectory(index, workTree.toFile(), ".", SparseCheckout.load(gitDir), staged);
+            for (String filePath : new ArrayList<>(index.getEntries().keySet())) {
+                if (unstageMissing(index, filePath) != null) {
+                    staged.add(filePath);
+                }
+            }
+            if (index.isDirty()) {
+                index.write(gitDir.resolve("index"));
+            }
+            return staged;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addDirectory(Index index, File directory, String relative, SparseCheckout sparse,
+                              List<String> staged) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String path = relative + "/" + file.getName();
+            if (file.getName().startsWith(".git")) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                // Out-of-cone directories are skipped without being listed
+                if (sparse == null || sparse.includesDirectory(path)) {
+                    addDirectory(index, file, path, sparse, staged);
+                }
+            } else if (file.isFile() && !file.getName().equals("Lit.jar")
+                    && (sparse == null || sparse.includes(path))) {
+                if (stage(index, path, file.toPath()) != null) {
+                    staged.add(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry for a file deleted from the working directory;
+     * entries outside the sparse-checkout cone are never on disk and stay.
+     */
+    private Index.Entry unstageMissing(Index index, String filePath) {
+        Index.Entry entry = index.get(filePath);
+        if (entry == null || entry.skipWorktree || Files.exists(workTree.resolve(filePath))) {
+            return null;
+        }
+        return index.remove(filePath);
+    }
+
+    /**
+     * Writes the blob and updates the in-memory index; returns null when the
+     * entry is already up to date. A file whose stat data matches its entry
+     * is not read at all.
+     */
+    private ObjectId stage(Index index, String filePath, Path file) throws IOException {
+        if (index.isUpToDate(filePath, file)) {
+            return null;
+        }
+        Index.Entry existing = index.get(filePath);
+        ObjectId id = writeBlob(file);
+        if (existing != null && !existing.skipWorktree && existing.id.equals(id)) {
+            index.refresh(filePath, file);
+            return null;
+        }
+        index.put(filePath, id, file);
+        return id;
+    }
+
+    /**
+     * Stores a file as a blob, chunked at or above core.chunkThreshold; a
+     * no-op for content already in the store.
+     */
+    private ObjectId writeBlob(Path file) throws IOException {
+        long chunkThreshold = getChunkThreshold();
+        if (chunkThreshold > 0 && Files.size(file) >= chunkThreshold) {
+            ChunkStore.Result chunked = objects.getChunkStore().write(file);
+            ObjectId id = ObjectId.fromString(chunked.hash);
+            objects.write(id, chunked.manifest);
+            return id;
+        }
+        return objects.write(Files.readAllBytes(file));
+    }
+
+    /**
+     * Commits the index on the current branch and returns the new commit.
+     */
+    public ObjectId commit(String message) throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Index index = readIndex();
+            if (index.isEmpty()) {
+                throw new RepositoryException("No changes staged for commit.");
+            }
+            ObjectId tree = writeTree(index.toState());
+
+            List<ObjectId> parents = new ArrayList<>();
+            ObjectId head = resolveHead();
+            if (head != null) {
+                parents.add(head);
+            }
+            ObjectId commit = writeCommit(tree, parents, message);
+            updateHead(commit);
+            return commit;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private ObjectId writeTree(Map<String, ObjectId> state) throws IOException {
+        return objects.write(Tree.format(state).getBytes());
+    }
+
+    private ObjectId writeCommit(ObjectId tree, List<ObjectId> parents, String message) throws IOException {
+        String author = System.getProperty("user.name");
+        ObjectId commit = objects.write(Commit.format(tree, parents, author, message).getBytes());
+        try {
+            changedPathFilter(objects.readCommit(commit));
+        } catch (IOException e) {
+            // The filter is only a shortcut; log computes it again when it walks this commit
+        }
+        return commit;
+    }
+
+    // ---- history ----
+
+    /**
+     * First-parent history from HEAD, newest first.
+     */
+    public List<Commit> log() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            List<Commit> history = new ArrayList<>();
+            Set<ObjectId> processed = new HashSet<>();
+            for (ObjectId id = resolveHead(); id != null && objects.has(id) && processed.add(id); ) {
+                Commit commit = objects.readCommit(id);
+                history.add(commit);
+                id = commit.getFirstParent();
+            }
+            return history;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * First-parent history from HEAD limited to commits that changed path,
+     * or any file under it when path is a directory.
+     *
+     * Each commit's changed-path Bloom filter is checked first, so only
+     * commits it cannot rule out have their trees compared. Commits made
+     * before filters existed get one computed and stored as they are walked.
+     */
+    public List<Commit> log(String path) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            String target = SparseCheckout.normalize(path);
+            while (target.endsWith("/")) {
+                target = target.substring(0, target.length() - 1);
+            }
+            List<Commit> history = new ArrayList<>();
+            Set<ObjectId> processed = new HashSet<>();
+            for (ObjectId id = resolveHead(); id != null && objects.has(id) && processed.add(id); ) {
+                Commit commit = objects.readCommit(id);
+                if (target.isEmpty() || (changedPathFilter(commit).mightContain(target) && touches(commit, target))) {
+                    history.add(commit);
+                }
+                id = commit.getFirstParent();
+            }
+            return history;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BloomFilter changedPathFilter(Commit commit) throws IOException {
+        BloomFilter filter = changedPaths.get(commit.getId());
+        if (filter == null) {
+            Set<String> changed = new HashSet<>();
+            for (String path : changedFiles(commit)) {
+                // Parent directories go in too, so a directory can be looked up
+                for (int slash = path.length(); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                    changed.add(path.substring(0, slash));
+                }
+            }
+            filter = BloomFilter.of(changed);
+            try {
+                changedPaths.put(commit.getId(), filter);
+            } catch (IOException e) {
+                // Not stored, so it is computed again next time
+            }
+        }
+        return filter;
+    }
+
+    private boolean touches(Commit commit, String target) throws IOException {
+        for (String path : changedFiles(commit)) {
+            if (path.equals(target) || path.startsWith(target + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Normalized paths whose blob differs from the commit's first parent.
+     */
+    private Set<String> changedFiles(Commit commit) throws IOException {
+        ObjectId parent = commit.getFirstParent();
+        Map<String, ObjectId> before = parent != null && objects.has(parent) ? getCommitState(parent) : new HashMap<>();
+        Map<String, ObjectId> after = getCommitState(commit.getId());
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, ObjectId> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.remove(entry.getKey()))) {
+                changed.add(SparseCheckout.normalize(entry.getKey()));
+            }
+        }
+        for (String removed : before.keySet()) {
+            changed.add(SparseCheckout.normalize(removed));
+        }
+        return changed;
+    }
+
+    /**
+     * Branch each commit was first made on: main's first-parent line is
+     * claimed first, then each other branch claims commits not yet taken.
+     */
+    public Map<ObjectId, String> commitBranches() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            List<String> branches = listBranches();
+            List<String> ordered = new ArrayList<>();
+            if (branches.remove("main")) {
+                ordered.add("main");
+            }
+            ordered.addAll(branches);
+
+            Map<ObjectId, String> commitToBranch = new HashMap<>();
+            for (String branch : ordered) {
+                for (ObjectId id = readRef(branchPath(branch)); id != null && !commitToBranch.containsKey(id); ) {
+                    commitToBranch.put(id, branch);
+                    id = objects.has(id) ? objects.readCommit(id).getFirstParent() : null;
+                }
+            }
+            return commitToBranch;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ObjectId findMergeBase(ObjectId commit1, ObjectId commit2) throws IOException {
+        Set<ObjectId> commit1Ancestors = new HashSet<>();
+        for (ObjectId id = commit1; id != null && commit1Ancestors.add(id); ) {
+            id = objects.has(id) ? objects.readCommit(id).getFirstParent() : null;
+        }
+
+        // Walk through commit2's history until we find first common ancestor
+        Set<ObjectId> seen = new HashSet<>();
+        for (ObjectId id = commit2; id != null && seen.add(id); ) {
+            if (commit1Ancestors.contains(id)) {
+                return id;
+            }
+            id = objects.has(id) ? objects.readCommit(id).getFirstParent() : null;
+        }
+        return null;
+    }
+
+    private Map<String, ObjectId> getCommitState(ObjectId commit) throws IOException {
+        if (commit == null) {
+            return new HashMap<>();
+        }
+        return new HashMap<>(objects.readTree(objects.readCommit(commit).getTree()).getEntries());
+    }
+
+    /**
+     * getCommitState for several commits, reading their commits and then
+     * their trees as two batches.
+     */
+    private List<Map<String, ObjectId>> getCommitStates(ObjectId... commits) throws IOException {
+        List<ObjectId> present = Arrays.stream(commits).filter(Objects::nonNull).toList();
+        Map<ObjectId, Commit> parsed = objects.readCommits(present);
+        Map<ObjectId, Tree> trees = objects.readTrees(parsed.values().stream().map(Commit::getTree).toList());
+        List<Map<String, ObjectId>> states = new ArrayList<>();
+        for (ObjectId commit : commits) {
+            states.add(commit == null ? new HashMap<>()
+                    : new HashMap<>(trees.get(parsed.get(commit).getTree()).getEntries()));
+        }
+        return states;
+    }
+
+    // ---- merge ----
+
+    public MergeResult merge(String sourceBranchName) throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            String currentBranch = getCurrentBranch();
+            if (currentBranch.equals(sourceBranchName)) {
+                throw new RepositoryException("Cannot merge branch into itself.");
+            }
+            ObjectId sourceCommit = resolveBranch(sourceBranchName);
+            if (sourceCommit == null) {
+                throw new RepositoryException("Error: Branch '" + sourceBranchName + "' has no commits.");
+            }
+            ObjectId currentCommit = resolveHead();
+
+            // Fast-forward when the current commit is the common ancestor
+            ObjectId mergeBase = currentCommit == null ? null : findMergeBase(currentCommit, sourceCommit);
+            if (currentCommit == null || currentCommit.equals(mergeBase)) {
+                checkoutCommit(sourceCommit);
+                updateHead(sourceCommit);
+                return new MergeResult(MergeResult.Status.FAST_FORWARD, sourceCommit, new ArrayList<>());
+            }
+
+            List<String> conflicts = new ArrayList<>();
+            List<Map<String, ObjectId>> states = getCommitStates(mergeBase, currentCommit, sourceCommit);
+            Map<String, ObjectId> mergedState = mergeTrees(states.get(0), states.get(1), states.get(2), conflicts);
+            ObjectId tree = writeTree(mergedState);
+            ObjectId commit = writeCommit(tree, Arrays.asList(currentCommit, sourceCommit),
+                    "Merge branch '" + sourceBranchName + "' into " + currentBranch);
+            checkoutCommit(commit);
+            updateHead(commit);
+            return new MergeResult(MergeResult.Status.MERGED, commit, conflicts);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<String, ObjectId> mergeTrees(
+            Map<String, ObjectId> baseState,
+            Map<String, ObjectId> currentState,
+            Map<String, ObjectId> sourceState,
+            List<String> conflicts) throws IOException {
+        Map<String, ObjectId> mergedState = new HashMap<>(currentState);
+
+        // Follow renames on either side so an edit on one branch lands on the renamed path
+        int threshold = getRenameThreshold("merge.renameThreshold");
+        Map<String, String> currentRenames = detectRenames(baseState, currentState, threshold);
+        Map<String, String> sourceRenames = detectRenames(baseState, sourceState, threshold);
+        Set<String> handled = new HashSet<>();
+
+        for (Map.Entry<String, String> rename : sourceRenames.entrySet()) {
+            String oldPath = rename.getKey();
+            String newPath = rename.getValue();
+            ObjectId baseHash = baseState.get(oldPath);
+            ObjectId sourceHash = sourceState.get(newPath);
+            ObjectId currentHash = currentState.get(oldPath);
+            handled.add(newPath);
+
+            if (currentRenames.containsKey(oldPath)) {
+                if (!currentRenames.get(oldPath).equals(newPath)) {
+                    conflicts.add("CONFLICT (rename/rename): " + oldPath + " renamed to "
+                            + currentRenames.get(oldPath) + " in current and to " + newPath + " in source.");
+                } else {
+                    // Same rename on both sides: merge the contents against the old path's base
+                    ObjectId renamedHash = currentState.get(newPath);
+                    if (sourceHash.equals(baseHash) || sourceHash.equals(renamedHash)) {
+                        // Current already has the right content
+                    } else if (renamedHash.equals(baseHash)) {
+                        mergedState.put(newPath, sourceHash);
+                    } else {
+                        conflicts.add("CONFLICT: " + newPath + " (renamed from " + oldPath + ") has conflicts.");
+                    }
+                }
+                continue;
+            }
+            if (currentHash == null) {
+                conflicts.add("CONFLICT (rename/delete): " + oldPath + " renamed to " + newPath
+                        + " in source and deleted in current.");
+                continue;
+            }
+            if (currentState.containsKey(newPath)) {
+                conflicts.add("CONFLICT (rename/add): " + newPath + " added in current and renamed from "
+                        + oldPath + " in source.");
+                continue;
+            }
+
+            mergedState.remove(oldPath);
+            if (currentHash.equals(baseHash) || currentHash.equals(sourceHash)) {
+                mergedState.put(newPath, sourceHash);
+            } else if (sourceHash.equals(baseHash)) {
+                mergedState.put(newPath, currentHash);
+            } else {
+                conflicts.add("CONFLICT: " + newPath + " (renamed from " + oldPath + ") has conflicts.");
+                mergedState.put(newPath, currentHash);
+            }
+        }
+
+        for (Map.Entry<String, String> rename : currentRenames.entrySet()) {
+            String oldPath = rename.getKey();
+            String newPath = rename.getValue();
+            if (sourceRenames.containsKey(oldPath)) {
+                continue;
+            }
+            handled.add(oldPath);
+            handled.add(newPath);
+
+            ObjectId baseHash = baseState.get(oldPath);
+            ObjectId sourceHash = sourceState.get(oldPath);
+            ObjectId currentHash = currentState.get(newPath);
+            if (sourceState.containsKey(newPath) && !sourceState.get(newPath).equals(currentHash)) {
+                conflicts.add("CONFLICT (rename/add): " + newPath + " renamed from " + oldPath
+                        + " in current and added in source.");
+                continue;
+            }
+            if (sourceHash == null || sourceHash.equals(baseHash) || sourceHash.equals(currentHash)) {
+                continue;
+            }
+            if (currentHash.equals(baseHash)) {
+                mergedState.put(newPath, sourceHash);
+            } else {
+                conflicts.add("CONFLICT: " + newPath + " (renamed from " + oldPath + ") has conflicts.");
+            }
+        }
+
+        for (Map.Entry<String, ObjectId> entry : sourceState.entrySet()) {
+            String file = entry.getKey();
+            if (handled.contains(file)) {
+                continue;
+            }
+            ObjectId sourceHash = entry.getValue();
+            ObjectId baseHash = baseState.get(file);
+            ObjectId currentHash = currentState.get(file);
+
+            if (baseHash == null) {
+                // File added in source
+                mergedState.put(file, sourceHash);
+            } else if (baseHash.equals(currentHash)) {
+                // File unchanged in current but changed in source
+                mergedState.put(file, sourceHash);
+            } else if (!baseHash.equals(sourceHash) && !baseHash.equals(currentHash)) {
+                // Conflict - both branches modified the file; the current version is kept
+                conflicts.add("CONFLICT: " + file + " has conflicts.");
+            }
+        }
+
+        return mergedState;
+    }
+
+    /**
+     * Returns old path -> new path for files that were renamed between base and side.
+     */
+    private Map<String, String> detectRenames(Map<String, ObjectId> baseState,
+                                              Map<String, ObjectId> sideState, int threshold) throws IOException {
+        Map<String, String> deleted = new HashMap<>();
+        Map<String, String> added = new HashMap<>();
+        for (Map.Entry<String, ObjectId> entry : baseState.entrySet()) {
+            if (!sideState.containsKey(entry.getKey())) {
+                deleted.put(entry.getKey(), entry.getValue().name());
+            }
+        }
+        for (Map.Entry<String, ObjectId> entry : sideState.entrySet()) {
+            if (!baseState.containsKey(entry.getKey())) {
+                added.put(entry.getKey(), entry.getValue().name());
+            }
+        }
+
+        Map<String, String> renames = new HashMap<>();
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+        RenameDetector detector = new RenameDetector(this::fingerprintBlob, threshold, false);
+        for (RenameDetector.Match match : detector.detect(deleted, added, Collections.emptyMap())) {
+            renames.put(match.source, match.target);
+        }
+        return renames;
+    }
+
+    private Map<Long, Integer> fingerprintBlob(String hash) throws IOException {
+        ObjectId id = ObjectId.fromString(hash);
+        Path objectPath = objects.path(id);
+        if (ChunkStore.isManifest(id, objectPath)) {
+            // Chunk ids of a large blob are already content-defined fingerprints
+            Map<Long, Integer> print = new HashMap<>();
+            for (Map.Entry<String, Integer> chunk : ChunkStore.readManifest(objectPath).entrySet()) {
+                print.merge(Long.parseUnsignedLong(chunk.getKey().substring(0, 16), 16), chunk.getValue(), Integer::sum);
+            }
+            return print;
+        }
+        return RenameDetector.fingerprint(Files.readAllBytes(objectPath));
+    }
+
+    // ---- stash ----
+
+    /**
+     * Saves the index and the tracked files in the working directory as a
+     * stash commit, then resets both to HEAD. Returns the stash commit.
+     *
+     * The stash commit's tree is the working directory and its parents are
+     * HEAD and a commit of the index. Files whose stat data matches the index
+     * reuse the index blob without being read, so only modified files are
+     * hashed. Entries are kept in .git/refs/stash, newest first.
+     */
+    public ObjectId stashPush() throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            ObjectId head = resolveHead();
+            if (head == null) {
+                throw new RepositoryException("You do not have the initial commit yet.");
+            }
+            Index index = readIndex();
+            Map<String, ObjectId> indexState = index.toState();
+            Map<String, ObjectId> worktreeState = new LinkedHashMap<>();
+            for (Map.Entry<String, Index.Entry> entry : index.getEntries().entrySet()) {
+                String filePath = entry.getKey();
+                Path file = workTree.resolve(filePath);
+                if (entry.getValue().skipWorktree || index.isUpToDate(filePath, file)) {
+                    worktreeState.put(filePath, entry.getValue().id);
+                } else if (Files.isRegularFile(file)) {
+                    worktreeState.put(filePath, writeBlob(file));
+                }
+            }
+            Map<String, ObjectId> headState = getCommitState(head);
+            if (indexState.equals(headState) && worktreeState.equals(headState)) {
+                throw new RepositoryException("No local changes to save.");
+            }
+
+            String summary = getCurrentBranch() + ": " + head.abbreviate() + " " + objects.readCommit(head).getMessage();
+            ObjectId indexCommit = writeCommit(writeTree(indexState), List.of(head), "index on " + summary);
+            ObjectId stash = writeCommit(writeTree(worktreeState), List.of(head, indexCommit), "WIP on " + summary);
+            // Record the entry before touching the working directory
+            List<ObjectId> stashes = readStashEntries();
+            stashes.add(0, stash);
+            writeStashEntries(stashes);
+
+            // Everything was just saved, so local changes are discarded
+            switchTo(null, headState, headState);
+            return stash;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stash commits, newest first.
+     */
+    public List<Commit> stashList() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            List<ObjectId> stashes = readStashEntries();
+            Map<ObjectId, Commit> commits = objects.readCommits(stashes);
+            List<Commit> list = new ArrayList<>();
+            for (ObjectId stash : stashes) {
+                list.add(commits.get(stash));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restores the newest stash entry into the working directory and index
+     * and drops it. When HEAD or the index moved since the stash was made,
+     * the stashed changes are merged in; if that conflicts, the current
+     * version of those files is kept, the entry is not dropped, and the
+     * conflicts are returned.
+     */
+    public List<String> stashPop() throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            List<ObjectId> stashes = readStashEntries();
+            if (stashes.isEmpty()) {
+                throw new RepositoryException("No stash entries found.");
+            }
+            if (hasUncommittedChanges()) {
+                throw new RepositoryException("Error: You have uncommitted changes.");
+            }
+            Commit stash = objects.readCommit(stashes.get(0));
+            if (stash.getParents().size() != 2) {
+                throw new RepositoryException("Error: " + stash.getId().abbreviate() + " is not a stash commit.");
+            }
+            List<Map<String, ObjectId>> states = getCommitStates(
+                    stash.getParents().get(0), stash.getParents().get(1), stash.getId());
+            Map<String, ObjectId> base = states.get(0);
+            Map<String, ObjectId> current = readIndex().toState();
+
+            List<String> conflicts = new ArrayList<>();
+            Map<String, ObjectId> worktreeState = states.get(2);
+            Map<String, ObjectId> indexState = states.get(1);
+            if (!current.equals(base)) {
+                worktreeState = mergeTrees(base, current, worktreeState, conflicts);
+                indexState = mergeTrees(base, current, indexState, new ArrayList<>());
+            }
+            switchTo(current, worktreeState, indexState);
+
+            if (conflicts.isEmpty()) {
+                stashes.remove(0);
+                writeStashEntries(stashes);
+            }
+            return conflicts;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<ObjectId> readStashEntries() throws IOException {
+        List<ObjectId> stashes = new ArrayList<>();
+        Path stashRef = gitDir.resolve("refs").resolve("stash");
+        if (Files.exists(stashRef)) {
+            for (String line : Files.readAllLines(stashRef)) {
+                if (ObjectId.isValid(line.trim())) {
+                    stashes.add(ObjectId.fromString(line));
+                }
+            }
+        }
+        return stashes;
+    }
+
+    private void writeStashEntries(List<ObjectId> stashes) throws IOException {
+        Path stashRef = gitDir.resolve("refs").resolve("stash");
+        if (stashes.isEmpty()) {
+            Files.deleteIfExists(stashRef);
+        } else {
+            writeRef(stashRef, stashes.stream().map(ObjectId::name).collect(Collectors.joining("\n", "", "\n")));
+        }
+    }
+
+    // ---- status and diff ----
+
+    public List<StatusEntry> status() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            List<StatusEntry> entries = new ArrayList<>();
+            for (Map.Entry<String, Index.Entry> entry : readIndex().getEntries().entrySet()) {
+                entries.add(new StatusEntry(entry.getKey(), entry.getValue().id, entry.getValue().skipWorktree));
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Staged changes against HEAD, in path order, with renames (and copies
+     * when findCopies is set) paired up.
+     */
+    public List<DiffEntry> diffStaged(boolean findCopies) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Map<String, ObjectId> headState = getCommitState(resolveHead());
+            Map<String, ObjectId> indexState = readIndex().toState();
+
+            Map<String, String> deleted = new TreeMap<>();
+            Map<String, String> added = new TreeMap<>();
+            Map<String, String> unchanged = new TreeMap<>();
+            List<String> modified = new ArrayList<>();
+            for (Map.Entry<String, ObjectId> entry : headState.entrySet()) {
+                ObjectId indexHash = indexState.get(entry.getKey());
+                if (indexHash == null) {
+                    deleted.put(entry.getKey(), entry.getValue().name());
+                } else if (indexHash.equals(entry.getValue())) {
+                    unchanged.put(entry.getKey(), entry.getValue().name());
+                } else {
+                    modified.add(entry.getKey());
+                }
+            }
+            for (Map.Entry<String, ObjectId> entry : indexState.entrySet()) {
+                if (!headState.containsKey(entry.getKey())) {
+                    added.put(entry.getKey(), entry.getValue().name());
+                }
+            }
+
+            RenameDetector detector = new RenameDetector(this::fingerprintBlob,
+                    getRenameThreshold("diff.renameThreshold"), findCopies);
+            Map<String, DiffEntry> output = new TreeMap<>();
+            for (RenameDetector.Match match : detector.detect(deleted, added, unchanged)) {
+                DiffEntry.ChangeType type = match.copy ? DiffEntry.ChangeType.COPIED : DiffEntry.ChangeType.RENAMED;
+                output.put(match.target, new DiffEntry(type, match.source, match.target, match.score));
+                added.remove(match.target);
+                if (!match.copy) {
+                    deleted.remove(match.source);
+                }
+            }
+            for (String path : added.keySet()) {
+                output.put(path, new DiffEntry(DiffEntry.ChangeType.ADDED, null, path, 0));
+            }
+            for (String path : deleted.keySet()) {
+                output.put(path, new DiffEntry(DiffEntry.ChangeType.DELETED, path, null, 0));
+            }
+            for (String path : modified) {
+                output.put(path, new DiffEntry(DiffEntry.ChangeType.MODIFIED, path, path, 0));
+            }
+            return new ArrayList<>(output.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- sparse checkout ----
+
+    /**
+     * Cone directories, or null when sparse checkout is off.
+     */
+    public Set<String> getSparseCheckoutDirectories() throws IOException {
+        SparseCheckout sparse = SparseCheckout.load(gitDir);
+        return sparse == null ? null : sparse.getDirectories();
+    }
+
+    /**
+     * Restricts the working directory to the given directories. Returns the
+     * modified files outside the new cone that were left in place.
+     */
+    public List<String> setSparseCheckout(List<String> directories) throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (hasUncommittedChanges()) {
+                throw new RepositoryException("Error: You have uncommitted changes.");
+            }
+            return changeSparseCheckout(directories);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void disableSparseCheckout() throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            changeSparseCheckout(null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the cone directories (null turns sparse checkout off) and
+     * reapplies them, restoring the old ones if local changes are in the way.
+     */
+    private List<String> changeSparseCheckout(List<String> directories) throws IOException, RepositoryException {
+        Path patternsFile = SparseCheckout.patternsFile(gitDir);
+        List<String> previous = Files.exists(patternsFile) ? Files.readAllLines(patternsFile) : null;
+        writeSparsePatterns(patternsFile, directories);
+        try {
+            return reapplySparseCheckout();
+        } catch (RepositoryException e) {
+            writeSparsePatterns(patternsFile, previous);
+            throw e;
+        }
+    }
+
+    private static void writeSparsePatterns(Path patternsFile, List<String> directories) throws IOException {
+        if (directories == null) {
+            Files.deleteIfExists(patternsFile);
+        } else {
+            Files.createDirectories(patternsFile.getParent());
+            Files.write(patternsFile, directories);
+        }
+    }
+
+    private List<String> reapplySparseCheckout() throws IOException, RepositoryException {
+        List<String> kept = new ArrayList<>();
+        ObjectId head = resolveHead();
+        if (head == null) {
+            return kept;
+        }
+        Map<String, ObjectId> before = readIndex().toState();
+        checkoutCommit(head);
+
+        // Delete working files that just left the cone, as long as they still
+        // match what was checked out
+        for (Map.Entry<String, Index.Entry> entry : readIndex().getEntries().entrySet()) {
+            Path path = workTree.resolve(entry.getKey());
+            if (!entry.getValue().skipWorktree || !Files.isRegularFile(path)) {
+                continue;
+            }
+            ObjectId hash = ObjectStore.hashFile(path);
+            if (hash.equals(entry.getValue().id) || hash.equals(before.get(entry.getKey()))) {
+                Files.delete(path);
+                // Drop directories left empty, up to the working directory
+                for (Path dir = path.getParent(); !dir.equals(workTree) && isEmptyDirectory(dir); dir = dir.getParent()) {
+                    Files.delete(dir);
+                }
+            } else {
+                kept.add(entry.getKey());
+            }
+        }
+        return kept;
+    }
+
+    private static boolean isEmptyDirectory(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries.findAny().isEmpty();
+        }
+    }
+
+    // ---- bundles ----
+
+    /**
+     * Writes a bundle of the given branches. A revision "^base" or a range
+     * "base..branch" leaves out everything base reaches, for an incremental
+     * bundle; base may be a branch, HEAD or a full commit id.
+     */
+    public void createBundle(Path file, List<String> revisions, Consumer<String> out)
+            throws IOException, RepositoryException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Map<String, ObjectId> refs = new LinkedHashMap<>();
+            List<ObjectId> excluded = new ArrayList<>();
+            for (String revision : revisions) {
+                int range = revision.indexOf("..");
+                if (range >= 0) {
+                    if (range > 0) {
+                        excluded.add(resolveRevision(revision.substring(0, range)));
+                    }
+                    String tip = revision.substring(range + 2);
+                    addBundleRef(refs, tip.isEmpty() ? "HEAD" : tip);
+                } else if (revision.startsWith("^")) {
+                    excluded.add(resolveRevision(revision.substring(1)));
+                } else {
+                    addBundleRef(refs, revision);
+                }
+            }
+            if (refs.isEmpty()) {
+                throw new RepositoryException("Error: Refusing to create an empty bundle.");
+            }
+            new Bundle(gitDir, objects, out).create(file, refs, excluded);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addBundleRef(Map<String, ObjectId> refs, String name) throws IOException, RepositoryException {
+        String branch = name.equals("HEAD") ? getCurrentBranch() : name;
+        if (!Files.exists(branchPath(branch))) {
+            throw new RepositoryException("Error: '" + name + "' is not a branch.");
+        }
+        ObjectId commit = resolveBranch(branch);
+        if (commit == null) {
+            throw new RepositoryException("Error: Branch '" + branch + "' has no commits.");
+        }
+        refs.put("refs/heads/" + branch, commit);
+    }
+
+    private ObjectId resolveRevision(String revision) throws IOException, RepositoryException {
+        ObjectId commit = null;
+        if (revision.equals("HEAD")) {
+            commit = resolveHead();
+        } else if (Files.exists(branchPath(revision))) {
+            commit = resolveBranch(revision);
+        } else if (ObjectId.isValid(revision) && objects.has(ObjectId.fromString(revision))) {
+            commit = ObjectId.fromString(revision);
+        }
+        if (commit == null) {
+            throw new RepositoryException("Error: Unknown revision '" + revision + "'.");
+        }
+        return commit;
+    }
+
+    /**
+     * Imports a bundle's objects, then creates or fast-forwards each branch
+     * it carries. A branch that has diverged is left alone; the checked-out
+     * branch is only moved, and checked out, when the working directory is
+     * clean. Reports each ref to out.
+     */
+    public void unbundle(Path file, Consumer<String> out) throws IOException, RepositoryException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Bundle.Header header = new Bundle(gitDir, objects, out).unbundle(file);
+            for (Map.Entry<String, ObjectId> ref : header.refs.entrySet()) {
+                if (!ref.getKey().startsWith("refs/heads/")) {
+                    out.accept("Skipped " + ref.getKey() + ": not a branch.");
+                    continue;
+                }
+                String branch = ref.getKey().substring("refs/heads/".length());
+                ObjectId target = ref.getValue();
+                Path branchPath = branchPath(branch);
+                ObjectId current = Files.exists(branchPath) ? readRef(branchPath) : null;
+                if (target.equals(current)) {
+                    out.accept("Branch '" + branch + "' is up to date.");
+                } else if (current != null && !isAncestor(current, target)) {
+                    out.accept("Skipped branch '" + branch + "': not a fast-forward of " + current.abbreviate() + ".");
+                } else if (branch.equals(getCurrentBranch())) {
+                    if (hasUncommittedChanges()) {
+                        out.accept("Skipped branch '" + branch + "': it is checked out and has uncommitted changes.");
+                        continue;
+                    }
+                    try {
+                        checkoutCommit(target);
+                    } catch (RepositoryException e) {
+                        out.accept("Skipped branch '" + branch + "': it is checked out and could not be updated: "
+                                + e.getMessage());
+                        continue;
+                    }
+                    updateHead(target);
+                    out.accept(describeRefUpdate(branch, current, target) + " and checked out.");
+                } else {
+                    writeRef(branchPath, target.name());
+                    out.accept(describeRefUpdate(branch, current, target) + ".");
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String describeRefUpdate(String branch, ObjectId from, ObjectId to) {
+        return from == null
+                ? "Created branch '" + branch + "' at " + to.abbreviate()
+                : "Updated branch '" + branch + "' " + from.abbreviate() + ".." + to.abbreviate();
+    }
+
+    /**
+     * Whether ancestor is reachable from commit through any parents.
+     */
+    private boolean isAncestor(ObjectId ancestor, ObjectId commit) throws IOException {
+        Deque<ObjectId> pending = new ArrayDeque<>();
+        Set<ObjectId> seen = new HashSet<>();
+        pending.push(commit);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (id.equals(ancestor)) {
+                return true;
+            }
+            if (seen.add(id) && objects.has(id)) {
+                objects.readCommit(id).getParents().forEach(pending::push);
+            }
+        }
+        return false;
+    }
+
+    // ---- maintenance ----
+
+    /**
+     * Verifies the object store, reporting each finding to out; true when sound.
+     */
+    public boolean fsck(Consumer<String> out) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return new Fsck(gitDir, objects, out).run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void prune(long expireMillis, boolean dryRun, Consumer<String> out) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            new Prune(gitDir, objects, out).prune(expireMillis, dryRun);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void countObjects(boolean verbose, Consumer<String> out) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            new Prune(gitDir, objects, out).countObjects(verbose);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- config ----
+
+    /**
+     * Similarity percentage needed to pair a deleted and an added file. Read from
+     * .git/config ("key = value" lines); merge falls back to the diff setting.
+     */
+    private int getRenameThreshold(String key) {
+        String value = readConfigValue(key);
+        if (value == null) {
+            value = readConfigValue("diff.renameThreshold");
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.replace("%", "").trim());
+            } catch (NumberFormatException e) {
+                // Fall back to the default rather than failing the command
+            }
+        }
+        return DEFAULT_RENAME_THRESHOLD;
+    }
+
+    /**
+     * Files at least this large are stored chunked; 0 (the default) disables
+     * chunking. Set with "core.chunkThreshold = 64m" in .git/config.
+     */
+    private long getChunkThreshold() {
+        String value = readConfigValue("core.chunkThreshold");
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        long unit = 1;
+        char suffix = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (suffix == 'k' || suffix == 'm' || suffix == 'g') {
+            unit = suffix == 'k' ? 1024L : suffix == 'm' ? 1024L * 1024 : 1024L * 1024 * 1024;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value.trim()) * unit;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String readConfigValue(String key) {
+        Path configPath = gitDir.resolve("config");
+        if (!Files.exists(configPath)) {
+            return null;
+        }
+        try {
+            for (String line : Files.readAllLines(configPath)) {
+                int separator = line.indexOf('=');
+                if (separator > 0 && line.substring(0, separator).trim().equals(key)) {
+                    return line.substring(separator + 1).trim();
+                }
+            }
+        } catch (IOException e) {
+            // An unreadable config behaves like an empty one
+        }
+        return null;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * An operation was refused because of the state of the repository, e.g. a
+ * missing branch or uncommitted changes. The message is meant for users.
+ */
+public class RepositoryException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public RepositoryException(String message) {
+        super(message);
+    }
+}
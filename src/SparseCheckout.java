@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Cone-mode sparse checkout patterns, read from .git/info/sparse-checkout.
+ *
+ * Each line names a directory whose whole subtree is checked out. Files at
+ * the repository root, and files directly inside the parents of a listed
+ * directory, are always included, as in git's cone mode.
+ */
+public class SparseCheckout {
+    private final Set<String> recursive = new TreeSet<>();
+    private final Set<String> parents = new HashSet<>();
+
+    private SparseCheckout(Collection<String> directories) {
+        for (String directory : directories) {
+            String dir = normalize(directory);
+            while (dir.endsWith("/")) {
+                dir = dir.substring(0, dir.length() - 1);
+            }
+            if (dir.isEmpty()) {
+                continue;
+            }
+            recursive.add(dir);
+            for (int slash = dir.indexOf('/'); slash > 0; slash = dir.indexOf('/', slash + 1)) {
+                parents.add(dir.substring(0, slash));
+            }
+        }
+    }
+
+    /**
+     * Returns the configured patterns, or null when sparse checkout is off.
+     */
+    public static SparseCheckout load(Path gitDir) throws IOException {
+        Path patternsFile = patternsFile(gitDir);
+        if (!Files.exists(patternsFile)) {
+            return null;
+        }
+        List<String> directories = new ArrayList<>();
+        for (String line : Files.readAllLines(patternsFile)) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                directories.add(trimmed);
+            }
+        }
+        return new SparseCheckout(directories);
+    }
+
+    public static Path patternsFile(Path gitDir) {
+        return gitDir.resolve("info").resolve("sparse-checkout");
+    }
+
+    public Set<String> getDirectories() {
+        return Collections.unmodifiableSet(recursive);
+    }
+
+    /**
+     * Whether a file at this path belongs in the working directory.
+     */
+    public boolean includes(String path) {
+        String normalized = normalize(path);
+        int slash = normalized.lastIndexOf('/');
+        if (slash < 0) {
+            return true;
+        }
+        String directory = normalized.substring(0, slash);
+        return parents.contains(directory) || isInsideCone(directory);
+    }
+
+    /**
+     * Whether a walk needs to descend into this directory at all. Directories
+     * that return false can be skipped without listing them.
+     */
+    public boolean includesDirectory(String directory) {
+        String normalized = normalize(directory);
+        return normalized.isEmpty() || parents.contains(normalized) || isInsideCone(normalized);
+    }
+
+    private boolean isInsideCone(String directory) {
+        for (String dir = directory; ; dir = dir.substring(0, dir.lastIndexOf('/'))) {
+            if (recursive.contains(dir)) {
+                return true;
+            }
+            if (dir.indexOf('/') < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Index and tree paths are written relative to the repository root,
+     * sometimes with a leading "./".
+     */
+    static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("./")) {
+            normalized = normalized.substring(2);
+        }
+        return normalized.equals(".") ? "" : normalized;
+    }
+}
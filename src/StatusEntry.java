@@ -0,0 +1,29 @@
+/**
+ * One index entry as reported by {@link Repository#status()}.
+ */
+public final class StatusEntry {
+    private final String path;
+    private final ObjectId id;
+    private final boolean skipWorktree;
+
+    StatusEntry(String path, ObjectId id, boolean skipWorktree) {
+        this.path = path;
+        this.id = id;
+        this.skipWorktree = skipWorktree;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * True for entries outside the sparse-checkout cone.
+     */
+    public boolean isSkipWorktree() {
+        return skipWorktree;
+    }
+}
@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed tree object: a flat list of path -> blob id. Immutable.
+ */
+public final class Tree {
+    private final ObjectId id;
+    private final Map<String, ObjectId> entries;
+
+    Tree(ObjectId id, Map<String, ObjectId> entries) {
+        this.id = id;
+        this.entries = Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    }
+
+    /**
+     * @throws IOException if an entry does not name a valid object id
+     */
+    static Tree parse(ObjectId id, List<String> lines) throws IOException {
+        Map<String, ObjectId> entries = new LinkedHashMap<>();
+        for (String line : lines) {
+            // The path runs to the end of the line and may contain spaces
+            String[] parts = line.split(" ", 2);
+            if (parts.length == 2) {
+                if (!ObjectId.isValid(parts[0])) {
+                    throw new IOException("Tree " + id + " is corrupt: bad object id '" + parts[0] + "'");
+                }
+                entries.put(parts[1], ObjectId.fromString(parts[0]));
+            }
+        }
+        return new Tree(id, entries);
+    }
+
+    /**
+     * Whether a path can be checked out: relative, and never stepping out of
+     * the working directory or into .git.
+     */
+    static boolean isSafePath(String path) {
+        if (path.isEmpty() || path.startsWith("/") || path.startsWith("\\")) {
+            return false;
+        }
+        for (String component : path.split("[/\\\\]")) {
+            if (component.equals("..") || component.equalsIgnoreCase(".git")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String format(Map<String, ObjectId> entries) {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, ObjectId> entry : entries.entrySet()) {
+            content.append(entry.getValue()).append(" ").append(entry.getKey()).append("\n");
+        }
+        return content.toString();
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * Path -> blob id, in the order the tree lists them.
+     */
+    public Map<String, ObjectId> getEntries() {
+        return entries;
+    }
+}